@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.benchmarks;
+
+/**
+ * Generates synthetic, but realistically structured, inputs of each supported file type.
+ */
+public final class BenchmarkInputs {
+
+    public enum InputType {
+        JS(".js", false), JS_MUNGE(".js", true), CSS(".css", false), HTML(".html", false), XHTML(".xhtml", false),
+        XML(".xml", false);
+
+        private final String suffix;
+        private final boolean munge;
+
+        InputType(final String suffix, final boolean munge) {
+            this.suffix = suffix;
+            this.munge = munge;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+
+        public boolean isMunge() {
+            return munge;
+        }
+    }
+
+    public enum InputSize {
+        SMALL(1024), MEDIUM(64 * 1024), LARGE(1024 * 1024);
+
+        private final int chars;
+
+        InputSize(final int chars) {
+            this.chars = chars;
+        }
+
+        public int getChars() {
+            return chars;
+        }
+    }
+
+    private BenchmarkInputs() {
+    }
+
+    public static String create(final InputType type, final InputSize size) {
+        return create(type, size, 0);
+    }
+
+    /**
+     * @param variant
+     *            number written into the header, so that inputs of different variants have different content
+     */
+    public static String create(final InputType type, final InputSize size, final int variant) {
+        final StringBuilder input = new StringBuilder(size.getChars() + 1024);
+        appendHeader(input, type, variant);
+        for (int i = 0; input.length() < size.getChars(); i++) {
+            appendBlock(input, type, i);
+        }
+        appendFooter(input, type);
+        return input.toString();
+    }
+
+    private static void appendHeader(final StringBuilder input, final InputType type, final int variant) {
+        switch (type) {
+        case HTML:
+            input.append("<!DOCTYPE html>\n<html>\n  <head>\n    <title>Benchmark ").append(variant)
+                    .append("</title>\n  </head>\n  <body>\n");
+            break;
+        case XHTML:
+            input.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n  <head>\n")
+                    .append("    <title>Benchmark ").append(variant).append("</title>\n  </head>\n  <body>\n");
+            break;
+        case XML:
+            input.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- generated feed ").append(variant)
+                    .append(" -->\n<feed>\n");
+            break;
+        default:
+            input.append("/* generated benchmark input ").append(variant).append(" */\n");
+            break;
+        }
+    }
+
+    private static void appendBlock(final StringBuilder input, final InputType type, final int i) {
+        switch (type) {
+        case JS:
+        case JS_MUNGE:
+            input.append("/**\n * Computes the total of item ").append(i).append(".\n */\n")
+                    .append("function computeTotal").append(i).append("(items, taxRate) {\n")
+                    .append("    var total = 0;\n")
+                    .append("    for (var index = 0; index < items.length; index++) {\n")
+                    .append("        total += items[index].price * items[index].quantity;\n")
+                    .append("    }\n")
+                    .append("    return { label: \"total-").append(i).append("\", value: total * (1 + taxRate) };\n")
+                    .append("}\n\n");
+            break;
+        case CSS:
+            input.append("/* block ").append(i).append(" */\n")
+                    .append(".block-").append(i).append(" .title, .block-").append(i).append(" h2 {\n")
+                    .append("    margin: 0px 0px 10px 0px;\n    padding: 0.50em;\n")
+                    .append("    color: #ffffff;\n    background-color: #336699;\n}\n\n");
+            break;
+        case HTML:
+        case XHTML:
+            input.append("    <!-- section ").append(i).append(" -->\n")
+                    .append("    <div class=\"section\" id=\"section-").append(i).append("\">\n")
+                    .append("      <h2>   Section ").append(i).append("   </h2>\n")
+                    .append("      <p>\n        Lorem ipsum dolor sit amet,   consectetur adipiscing elit.\n")
+                    .append("      </p>\n    </div>\n");
+            break;
+        case XML:
+            input.append("  <!-- entry ").append(i).append(" -->\n")
+                    .append("  <entry id=\"").append(i).append("\">\n")
+                    .append("    <title>   Entry ").append(i).append("   </title>\n")
+                    .append("    <link href=\"http://example.com/entries/").append(i).append("\" />\n")
+                    .append("  </entry>\n");
+            break;
+        default:
+            throw new IllegalArgumentException(String.valueOf(type));
+        }
+    }
+
+    private static void appendFooter(final StringBuilder input, final InputType type) {
+        switch (type) {
+        case HTML:
+        case XHTML:
+            input.append("  </body>\n</html>\n");
+            break;
+        case XML:
+            input.append("</feed>\n");
+            break;
+        default:
+            break;
+        }
+    }
+}
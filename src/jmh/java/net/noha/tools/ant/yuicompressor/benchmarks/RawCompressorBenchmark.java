@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import net.noha.tools.ant.yuicompressor.benchmarks.BenchmarkInputs.InputSize;
+import net.noha.tools.ant.yuicompressor.benchmarks.BenchmarkInputs.InputType;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+import com.googlecode.htmlcompressor.compressor.XmlCompressor;
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Throughput of the underlying compressors, called the same way the task calls them, without any file I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RawCompressorBenchmark {
+
+    /**
+     * Reports the compressed input volume, in MB per second next to the operation rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    private static final ErrorReporter REPORTER = new ErrorReporter() {
+
+        public void error(final String message, final String sourceName, final int line, final String lineSource,
+                final int lineOffset) {
+            throw new EvaluatorException(message);
+        }
+
+        public EvaluatorException runtimeError(final String message, final String sourceName, final int line,
+                final String lineSource, final int lineOffset) {
+            return new EvaluatorException(message);
+        }
+
+        public void warning(final String message, final String sourceName, final int line, final String lineSource,
+                final int lineOffset) {
+        }
+    };
+
+    @Param
+    public InputType type;
+
+    @Param
+    public InputSize size;
+
+    private String input;
+    private double inputMegabytes;
+
+    @Setup
+    public void setUp() {
+        input = BenchmarkInputs.create(type, size);
+        inputMegabytes = input.getBytes(Charsets.UTF_8).length / (1024.0 * 1024.0);
+    }
+
+    @Benchmark
+    public String compress(final Throughput throughput) throws IOException {
+        final StringWriter out = new StringWriter(input.length());
+        switch (type) {
+        case JS:
+        case JS_MUNGE:
+            new JavaScriptCompressor(new StringReader(input), REPORTER).compress(out, -1, type.isMunge(), false, true,
+                    false);
+            break;
+        case CSS:
+            new CssCompressor(new StringReader(input)).compress(out, -1);
+            break;
+        case HTML:
+        case XHTML:
+            out.write(new HtmlCompressor().compress(input));
+            break;
+        case XML:
+            out.write(new XmlCompressor().compress(input));
+            break;
+        default:
+            throw new IllegalStateException(String.valueOf(type));
+        }
+        throughput.megabytes += inputMegabytes;
+        return out.toString();
+    }
+}
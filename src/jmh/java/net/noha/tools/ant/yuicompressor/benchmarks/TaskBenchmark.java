@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.noha.tools.ant.yuicompressor.benchmarks.BenchmarkInputs.InputSize;
+import net.noha.tools.ant.yuicompressor.benchmarks.BenchmarkInputs.InputType;
+import net.noha.tools.ant.yuicompressor.tasks.YuiCompressorTask;
+
+import org.apache.tools.ant.Project;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+/**
+ * Throughput of a full task execution over a directory of inputs, including scanning, reading, compressing and
+ * writing. Outputs are removed before every invocation so that nothing is skipped as up to date. Inputs differ from
+ * each other, unless duplicates is set to measure deduplication, which compresses identical inputs once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskBenchmark {
+
+    private static final int FILE_COUNT = 16;
+
+    /**
+     * Reports the compressed input volume, in MB per second next to the operation rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Param
+    public InputType type;
+
+    @Param
+    public InputSize size;
+
+    @Param({ "false", "true" })
+    public boolean duplicates;
+
+    private File workDir;
+    private File fromDir;
+    private File toDir;
+    private Project project;
+    private double inputMegabytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = java.nio.file.Files.createTempDirectory("yui-compressor-benchmark").toFile();
+        fromDir = new File(workDir, "from");
+        toDir = new File(workDir, "to");
+        fromDir.mkdirs();
+        toDir.mkdirs();
+
+        long inputBytes = 0L;
+        for (int i = 0; i < FILE_COUNT; i++) {
+            final byte[] input = BenchmarkInputs.create(type, size, duplicates ? 0 : i).getBytes(Charsets.UTF_8);
+            Files.write(input, new File(fromDir, "input" + i + type.getSuffix()));
+            inputBytes += input.length;
+        }
+        inputMegabytes = inputBytes / (1024.0 * 1024.0);
+
+        project = new Project();
+        project.init();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearOutputs() throws IOException {
+        MoreFiles.deleteDirectoryContents(toDir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        MoreFiles.deleteRecursively(workDir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Benchmark
+    public void execute(final Throughput throughput) {
+        final YuiCompressorTask task = new YuiCompressorTask();
+        task.setProject(project);
+        task.setFromDir(fromDir);
+        task.setToDir(toDir);
+        task.setMunge(type.isMunge());
+        task.setWarn(false);
+        task.setVerbose(false);
+        task.execute();
+        throughput.megabytes += inputMegabytes;
+    }
+}
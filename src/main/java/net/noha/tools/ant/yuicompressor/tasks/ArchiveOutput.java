@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Writes outputs as the entries of a ZIP archive, such as a WAR or a JAR, instead of files. Changed entries are
+ * streamed into a temporary archive as soon as they are written. When closed, the entries of the existing archive
+ * that were not replaced are copied after them and the temporary archive is renamed over the existing one. The
+ * existing archive is left untouched when no entry changed.
+ *
+ * Thread safe, entries are written one at a time.
+ */
+final class ArchiveOutput {
+
+    // DOS timestamps of entries only have a two seconds resolution
+    private static final long TIME_RESOLUTION = 2000L;
+
+    private static final String MANIFEST_DIR = "META-INF/";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private final File archive;
+
+    // entries of the archive as it will be, by name, starting with those of the existing archive
+    private final Map<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();
+
+    // entries already in the temporary archive
+    private final Set<String> written = new HashSet<String>();
+
+    private ZipFile existing;
+    private File temp;
+    private ZipOutputStream out;
+    private boolean changed = false;
+    private boolean closed = false;
+
+    public ArchiveOutput(final File archive) throws IOException {
+        this.archive = archive;
+        if (archive.isFile()) {
+            existing = new ZipFile(archive);
+            final Enumeration<? extends ZipEntry> existingEntries = existing.entries();
+            while (existingEntries.hasMoreElements()) {
+                final ZipEntry entry = existingEntries.nextElement();
+                entries.put(entry.getName(), entry);
+            }
+        }
+    }
+
+    public synchronized boolean has(final String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @return the uncompressed size of the entry, or -1 when there is no such entry
+     */
+    public synchronized long getSize(final String name) {
+        final ZipEntry entry = entries.get(name);
+        return entry == null ? -1L : entry.getSize();
+    }
+
+    /**
+     * @return the time the entry was last written, or 0 when there is no such entry
+     */
+    public synchronized long getLastModified(final String name) {
+        final ZipEntry entry = entries.get(name);
+        return entry == null ? 0L : entry.getTime();
+    }
+
+    /**
+     * @param dir
+     *            name of a directory in the archive, ending with a slash, or an empty string for the root
+     * @return the names of the files directly in dir
+     */
+    public synchronized List<String> list(final String dir) {
+        final List<String> names = new ArrayList<String>();
+        for (final String name : entries.keySet()) {
+            if (name.startsWith(dir) && name.indexOf('/', dir.length()) < 0 && name.length() > dir.length()) {
+                names.add(name.substring(dir.length()));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Writes the entry, unless it already has the same content and method.
+     *
+     * @param method
+     *            {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+     * @return false when the entry was already up to date
+     */
+    public synchronized boolean put(final String name, final ByteSource content, final int method)
+            throws IOException {
+        if (closed) {
+            throw new IOException(archive + " is already closed");
+        }
+        final long size = content.size();
+        final long crc = content.hash(Hashing.crc32()).padToLong();
+        final ZipEntry current = entries.get(name);
+        if (current != null && current.getMethod() == method && current.getSize() == size
+                && current.getCrc() == crc) {
+            return false;
+        }
+
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        // rounded up, so that the entry is never older than inputs modified before it was written
+        entry.setTime((System.currentTimeMillis() / TIME_RESOLUTION + 1) * TIME_RESOLUTION);
+        if (method == ZipEntry.STORED) {
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc);
+        }
+
+        final ZipOutputStream zip = open();
+        zip.putNextEntry(entry);
+        content.copyTo(zip);
+        zip.closeEntry();
+
+        entries.put(name, entry);
+        written.add(name);
+        return true;
+    }
+
+    /**
+     * @return false when there is no such entry
+     */
+    public synchronized boolean remove(final String name) {
+        if (entries.remove(name) == null) {
+            return false;
+        }
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Completes the archive, copying the entries of the existing archive that were not replaced or removed.
+     *
+     * @return false when nothing changed and the existing archive was left untouched
+     */
+    public synchronized boolean close() throws IOException {
+        closed = true;
+        try {
+            if (!changed) {
+                return false;
+            }
+
+            final ZipOutputStream zip = open();
+            for (final ZipEntry entry : entries.values()) {
+                if (!written.contains(entry.getName())) {
+                    copy(entry);
+                }
+            }
+            out = null;
+            zip.close();
+
+            if (existing != null) {
+                existing.close();
+                existing = null;
+            }
+            OutputFiles.replace(temp, archive);
+            return true;
+        } finally {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (existing != null) {
+                existing.close();
+                existing = null;
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates the temporary archive on the first change. A manifest is copied first, where jar readers expect it.
+     */
+    private ZipOutputStream open() throws IOException {
+        changed = true;
+        if (out != null) {
+            return out;
+        }
+
+        archive.getAbsoluteFile().getParentFile().mkdirs();
+        temp = OutputFiles.createTempFile(archive);
+        out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        for (final String name : new String[] { MANIFEST_DIR, MANIFEST }) {
+            final ZipEntry entry = entries.get(name);
+            if (entry != null) {
+                copy(entry);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Copies an entry of the existing archive to the temporary archive.
+     */
+    private void copy(final ZipEntry source) throws IOException {
+        final ZipEntry entry = new ZipEntry(source.getName());
+        entry.setMethod(source.getMethod());
+        entry.setTime(source.getTime());
+        entry.setComment(source.getComment());
+        if (source.getMethod() == ZipEntry.STORED) {
+            entry.setSize(source.getSize());
+            entry.setCompressedSize(source.getSize());
+            entry.setCrc(source.getCrc());
+        }
+
+        out.putNextEntry(entry);
+        final InputStream in = existing.getInputStream(source);
+        try {
+            ByteStreams.copy(in, out);
+        } finally {
+            in.close();
+        }
+        out.closeEntry();
+        written.add(entry.getName());
+    }
+}
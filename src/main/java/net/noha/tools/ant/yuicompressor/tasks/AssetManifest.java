@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Maps logical output names to their fingerprinted names. Stored as a flat JSON object when the file name ends
+ * with .json, otherwise as a properties file.
+ */
+class AssetManifest {
+
+    private final File file;
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    public AssetManifest(final File file) {
+        this.file = file;
+    }
+
+    public synchronized void load() throws IOException {
+        entries.clear();
+        if (!file.isFile()) {
+            return;
+        }
+
+        if (isJson()) {
+            parseJson(Files.asCharSource(file, Charsets.UTF_8).read());
+        } else {
+            final Properties properties = new Properties();
+            final InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            for (final String name : properties.stringPropertyNames()) {
+                entries.put(name, properties.getProperty(name));
+            }
+        }
+    }
+
+    public synchronized void store() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        // never leaves a truncated manifest behind when the build is interrupted
+        if (isJson()) {
+            OutputFiles.writeAtomically(file, toJson().getBytes(Charsets.UTF_8));
+        } else {
+            final Properties properties = new Properties();
+            properties.putAll(entries);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, "yui-compressor asset manifest");
+            OutputFiles.writeAtomically(file, out.toByteArray());
+        }
+    }
+
+    public synchronized String get(final String logicalName) {
+        return entries.get(logicalName);
+    }
+
+    public synchronized void put(final String logicalName, final String fingerprintedName) {
+        entries.put(logicalName, fingerprintedName);
+    }
+
+    public synchronized void remove(final String logicalName) {
+        entries.remove(logicalName);
+    }
+
+    public synchronized Map<String, String> getEntries() {
+        return new TreeMap<String, String>(entries);
+    }
+
+    private boolean isJson() {
+        return file.getName().endsWith(".json");
+    }
+
+    private String toJson() {
+        final StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            json.append(separator).append("  ");
+            appendJsonString(json, entry.getKey());
+            json.append(": ");
+            appendJsonString(json, entry.getValue());
+            separator = ",\n";
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    static void appendJsonString(final StringBuilder json, final String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Reads the flat string to string object written by {@link #toJson()}.
+     */
+    private void parseJson(final String json) throws IOException {
+        final int[] pos = { skipWhitespace(json, 0) };
+        expect(json, pos, '{');
+        if (json.startsWith("}", skipWhitespace(json, pos[0]))) {
+            return;
+        }
+        while (true) {
+            final String key = readJsonString(json, pos);
+            expect(json, pos, ':');
+            entries.put(key, readJsonString(json, pos));
+            pos[0] = skipWhitespace(json, pos[0]);
+            if (pos[0] < json.length() && json.charAt(pos[0]) == ',') {
+                pos[0]++;
+            } else {
+                expect(json, pos, '}');
+                return;
+            }
+        }
+    }
+
+    private String readJsonString(final String json, final int[] pos) throws IOException {
+        expect(json, pos, '"');
+        final StringBuilder value = new StringBuilder();
+        int i = pos[0];
+        while (i < json.length() && json.charAt(i) != '"') {
+            char c = json.charAt(i++);
+            if (c == '\\' && i < json.length()) {
+                c = json.charAt(i++);
+                if (c == 'u' && i + 4 <= json.length()) {
+                    c = (char) Integer.parseInt(json.substring(i, i + 4), 16);
+                    i += 4;
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 't') {
+                    c = '\t';
+                } else if (c == 'r') {
+                    c = '\r';
+                }
+            }
+            value.append(c);
+        }
+        pos[0] = i;
+        expect(json, pos, '"');
+        return value.toString();
+    }
+
+    private void expect(final String json, final int[] pos, final char expected) throws IOException {
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (pos[0] >= json.length() || json.charAt(pos[0]) != expected) {
+            throw new IOException("Malformed asset manifest " + file + ", expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static int skipWhitespace(final String json, final int start) {
+        int i = start;
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * Nested budget element of the task. Every output whose name, relative to toDir or toArchive, matches the pattern
+ * must stay within maxSize bytes, and within maxGzipSize bytes once gzipped.
+ */
+public class Budget {
+
+    private String pattern;
+    private long maxSize = -1L;
+    private long maxGzipSize = -1L;
+
+    public String getPattern() throws BuildException {
+        if (pattern == null) {
+            throw new BuildException("budget requires a pattern attribute");
+        }
+        return pattern;
+    }
+
+    /**
+     * @param pattern
+     *            Ant pattern of the outputs, like **&#47;*.js
+     */
+    public void setPattern(final String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return the maximum size in bytes, or -1 when there is none
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize
+     *            maximum size of each output, like 50k
+     */
+    public void setMaxSize(final String maxSize) {
+        this.maxSize = MemoryBudget.parseSize(maxSize);
+    }
+
+    /**
+     * @return the maximum gzipped size in bytes, or -1 when there is none
+     */
+    public long getMaxGzipSize() {
+        return maxGzipSize;
+    }
+
+    /**
+     * @param maxGzipSize
+     *            maximum size of each output once gzipped, like 15k
+     */
+    public void setMaxGzipSize(final String maxGzipSize) {
+        this.maxGzipSize = MemoryBudget.parseSize(maxGzipSize);
+    }
+
+    /**
+     * @param name
+     *            name of the output relative to the output directory
+     */
+    public boolean matches(final String name) throws BuildException {
+        if (maxSize < 0 && maxGzipSize < 0) {
+            throw new BuildException("budget " + getPattern() + " requires a maxSize or maxGzipSize attribute");
+        }
+        String normalized = getPattern().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (normalized.endsWith(File.separator)) {
+            normalized += "**";
+        }
+        return SelectorUtils.matchPath(normalized, name.replace('/', File.separatorChar));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileProvider;
+
+/**
+ * Nested bundle element of the task. All members are concatenated in the order they are declared and compressed
+ * in a single pass into toFile. Use filelists when the order within a group of members matters.
+ */
+public class Bundle {
+
+    private File toFile;
+    private final List<ResourceCollection> members = new ArrayList<ResourceCollection>();
+
+    public void add(final ResourceCollection member) {
+        members.add(member);
+    }
+
+    public File getToFile() {
+        return toFile;
+    }
+
+    public void setToFile(final File toFile) {
+        this.toFile = toFile;
+    }
+
+    /**
+     * @return the file type of the bundle, taken from the name of toFile
+     */
+    public String getFileType() throws BuildException {
+        if (toFile == null) {
+            throw new BuildException("bundle requires a toFile attribute");
+        }
+
+        final String fileType = FileType.getFileType(toFile.getName());
+        if (!FileType.JS_FILE.equals(fileType) && !FileType.CSS_FILE.equals(fileType)) {
+            throw new BuildException("bundle " + toFile + " must be a " + FileType.JS_FILE + " or "
+                    + FileType.CSS_FILE + " file");
+        }
+        return fileType;
+    }
+
+    public List<File> getFiles() throws BuildException {
+        final List<File> files = new ArrayList<File>();
+        for (final ResourceCollection member : members) {
+            for (final Resource resource : member) {
+                final FileProvider provider = resource.as(FileProvider.class);
+                if (provider == null) {
+                    throw new BuildException("bundle " + toFile + " only supports file resources, not " + resource);
+                }
+                files.add(provider.getFile());
+            }
+        }
+        if (files.isEmpty()) {
+            throw new BuildException("bundle " + toFile + " has no members");
+        }
+        return files;
+    }
+}
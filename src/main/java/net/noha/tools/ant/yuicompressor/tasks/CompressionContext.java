@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Options and logging for compressing one file. Options hold the compressor attributes of the task, overridden by the
+ * attributes of the matching nested filetype element.
+ */
+public class CompressionContext {
+
+    // log levels, the values of Ant's Project.MSG_* levels
+    public static final int MSG_ERR = 0;
+    public static final int MSG_WARN = 1;
+    public static final int MSG_INFO = 2;
+    public static final int MSG_VERBOSE = 3;
+    public static final int MSG_DEBUG = 4;
+
+    /** Separates the file type from the name of an option for embedded content, as in <code>.js:munge</code>. */
+    public static final String EMBEDDED_SEPARATOR = ":";
+
+    private final CompressionEngine engine;
+    private final Map<String, String> options;
+    private final LogBuffer log;
+
+    CompressionContext(final CompressionEngine engine, final Map<String, String> options, final LogBuffer log) {
+        this.engine = engine;
+        this.options = Collections.unmodifiableMap(options);
+        this.log = log;
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public String getOption(final String name, final String defaultValue) {
+        final String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @return true for an option of true, yes or on, ignoring case, like Ant does for boolean attributes
+     */
+    public boolean getBooleanOption(final String name, final boolean defaultValue) {
+        final String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        final String normalized = value.trim().toLowerCase(Locale.ROOT);
+        return "true".equals(normalized) || "yes".equals(normalized) || "on".equals(normalized);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             when the option is not a number
+     */
+    public int getIntOption(final String name, final int defaultValue) {
+        final String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+
+    /**
+     * @return the level option, standard by default
+     * @throws IllegalArgumentException
+     *             when the option is not a level
+     */
+    public CompressionLevel getLevel() {
+        return CompressionLevel.parse(getOption("level", "standard"));
+    }
+
+    /**
+     * Compresses content embedded in the file, like a script of an HTML page, with the compressor of its file type.
+     * The options of the embedded file type are the options named with the file type and
+     * {@link #EMBEDDED_SEPARATOR} as prefix, like <code>.js:munge</code>; without any, the options of the file are
+     * used. Results are cached by the engine when it has a cache, so that content shared by many files is compressed
+     * once.
+     */
+    public String compressEmbedded(final String content, final String fileType) throws IOException {
+        return engine.compress(content, fileType, getEmbeddedOptions(fileType));
+    }
+
+    /**
+     * @return the options for content of the file type embedded in the file, without their prefix
+     */
+    Map<String, String> getEmbeddedOptions(final String fileType) {
+        final String prefix = fileType + EMBEDDED_SEPARATOR;
+        final Map<String, String> embedded = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (final Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                embedded.put(option.getKey().substring(prefix.length()), option.getValue());
+            }
+        }
+        return embedded.isEmpty() ? options : embedded;
+    }
+
+    /**
+     * Logs to the task, messages are dropped when compressing through a {@link CompressionEngine} directly.
+     *
+     * @param level
+     *            one of the MSG_* levels
+     */
+    public void log(final String message, final int level) {
+        if (log != null) {
+            log.log(message, level);
+        }
+    }
+}
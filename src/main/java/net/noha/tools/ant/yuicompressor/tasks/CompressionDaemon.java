@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.IntrospectionHelper;
+import org.apache.tools.ant.Project;
+
+/**
+ * Long lived compression server, so that repeated builds reuse loaded and JIT compiled compressors. Listens on a
+ * loopback port and publishes the port and an access token in a state file that only the owner can read. Shuts
+ * itself down after being idle for the given number of seconds.
+ * <p>
+ * Usage: <code>CompressionDaemon stateFile idleSeconds</code>
+ */
+public final class CompressionDaemon {
+
+    static final String STATE_PORT = "port";
+    static final String STATE_TOKEN = "token";
+
+    // request attribute holding the base dir of the calling project
+    static final String BASEDIR_ATTRIBUTE = "basedir";
+
+    // response records
+    static final int RESPONSE_MESSAGE = 1;
+    static final int RESPONSE_DONE = 0;
+
+    private static final int ACCEPT_TIMEOUT = 1000;
+
+    private final File stateFile;
+    private final long idleMillis;
+    private final String token = new BigInteger(130, new SecureRandom()).toString(32);
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+
+    private CompressionDaemon(final File stateFile, final long idleMillis) {
+        this.stateFile = stateFile;
+        this.idleMillis = idleMillis;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompressionDaemon stateFile idleSeconds");
+            System.exit(1);
+        }
+
+        final File stateFile = new File(args[0]).getAbsoluteFile();
+        stateFile.getParentFile().mkdirs();
+        // the spawning build does not read our output, keep it in a log next to the state file
+        final PrintStream log = new PrintStream(new FileOutputStream(stateFile.getPath() + ".log"), true);
+        System.setOut(log);
+        System.setErr(log);
+
+        new CompressionDaemon(stateFile, Long.parseLong(args[1]) * 1000L).run();
+        System.exit(0);
+    }
+
+    private void run() throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final ExecutorService handlers = Executors.newCachedThreadPool();
+        try {
+            writeState(server.getLocalPort());
+            server.setSoTimeout(ACCEPT_TIMEOUT);
+
+            while (true) {
+                try {
+                    final Socket socket = server.accept();
+                    activeRequests.incrementAndGet();
+                    handlers.execute(new Runnable() {
+
+                        public void run() {
+                            try {
+                                handle(socket);
+                            } finally {
+                                lastActivity.set(System.currentTimeMillis());
+                                activeRequests.decrementAndGet();
+                            }
+                        }
+                    });
+                } catch (final SocketTimeoutException e) {
+                    if (activeRequests.get() == 0 && System.currentTimeMillis() - lastActivity.get() >= idleMillis) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            removeState();
+            server.close();
+            handlers.shutdown();
+        }
+    }
+
+    private void handle(final Socket socket) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            try {
+                if (!token.equals(in.readUTF())) {
+                    return;
+                }
+
+                final Properties attributes = new Properties();
+                final int attributeCount = in.readInt();
+                for (int i = 0; i < attributeCount; i++) {
+                    attributes.setProperty(in.readUTF(), in.readUTF());
+                }
+                final String[] files = new String[in.readInt()];
+                for (int i = 0; i < files.length; i++) {
+                    files[i] = in.readUTF();
+                }
+
+                String error = null;
+                try {
+                    compress(attributes, files, out);
+                } catch (final BuildException e) {
+                    error = e.getMessage();
+                } catch (final RuntimeException e) {
+                    error = String.valueOf(e);
+                }
+
+                synchronized (out) {
+                    out.writeByte(RESPONSE_DONE);
+                    out.writeBoolean(error == null);
+                    out.writeUTF(error == null ? "" : truncate(error));
+                    out.flush();
+                }
+            } finally {
+                socket.close();
+            }
+        } catch (final IOException e) {
+            // the client went away, it falls back to compressing in-process
+            e.printStackTrace();
+        }
+    }
+
+    private void compress(final Properties attributes, final String[] files, final DataOutputStream out) {
+        final Project project = new Project();
+        project.init();
+        project.setBaseDir(new File(attributes.getProperty(BASEDIR_ATTRIBUTE)));
+        project.addBuildListener(new BuildListener() {
+
+            public void messageLogged(final BuildEvent event) {
+                try {
+                    synchronized (out) {
+                        out.writeByte(RESPONSE_MESSAGE);
+                        out.writeInt(event.getPriority());
+                        out.writeUTF(truncate(event.getMessage()));
+                    }
+                } catch (final IOException e) {
+                    throw new BuildException("Lost connection to the client", e);
+                }
+            }
+
+            public void buildStarted(final BuildEvent event) {
+            }
+
+            public void buildFinished(final BuildEvent event) {
+            }
+
+            public void targetStarted(final BuildEvent event) {
+            }
+
+            public void targetFinished(final BuildEvent event) {
+            }
+
+            public void taskStarted(final BuildEvent event) {
+            }
+
+            public void taskFinished(final BuildEvent event) {
+            }
+        });
+
+        final YuiCompressorTask task = new YuiCompressorTask();
+        task.setProject(project);
+        task.setTaskName("yui-compressor");
+        final IntrospectionHelper helper = IntrospectionHelper.getHelper(project, YuiCompressorTask.class);
+        for (final String name : attributes.stringPropertyNames()) {
+            if (!BASEDIR_ATTRIBUTE.equals(name)) {
+                helper.setAttribute(project, task, name, attributes.getProperty(name));
+            }
+        }
+        task.execute(files);
+    }
+
+    private void writeState(final int port) throws IOException {
+        final File tempFile = new File(stateFile.getPath() + ".tmp");
+        final OutputStream out = new FileOutputStream(tempFile);
+        try {
+            // the token is the only access control, keep it private to the owner
+            tempFile.setReadable(false, false);
+            tempFile.setReadable(true, true);
+            tempFile.setWritable(false, false);
+            tempFile.setWritable(true, true);
+
+            final Properties state = new Properties();
+            state.setProperty(STATE_PORT, String.valueOf(port));
+            state.setProperty(STATE_TOKEN, token);
+            state.store(out, "yui-compressor daemon");
+        } finally {
+            out.close();
+        }
+        stateFile.delete();
+        if (!tempFile.renameTo(stateFile)) {
+            throw new IOException("Cannot write daemon state file " + stateFile);
+        }
+    }
+
+    private void removeState() {
+        // a newer daemon may have taken over the state file
+        final Properties state = readState(stateFile);
+        if (state != null && token.equals(state.getProperty(STATE_TOKEN))) {
+            stateFile.delete();
+        }
+    }
+
+    static Properties readState(final File stateFile) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        try {
+            final InputStream in = new FileInputStream(stateFile);
+            try {
+                final Properties state = new Properties();
+                state.load(in);
+                return state.getProperty(STATE_PORT) != null && state.getProperty(STATE_TOKEN) != null ? state
+                        : null;
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    static String truncate(final String message) {
+        // writeUTF is limited to 64KB of encoded data
+        return message.length() > 16 * 1024 ? message.substring(0, 16 * 1024) : message;
+    }
+}
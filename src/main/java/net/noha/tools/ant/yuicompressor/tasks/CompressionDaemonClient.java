@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+import org.apache.tools.ant.AntClassLoader;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.mozilla.javascript.ErrorReporter;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Hands compression jobs to a {@link CompressionDaemon}, spawning one when none is running.
+ */
+class CompressionDaemonClient {
+
+    private static final int CONNECT_TIMEOUT = 1000;
+    // longest wait for the next response, the daemon reports every file it compressed
+    private static final int READ_TIMEOUT = 120000;
+    private static final long SPAWN_TIMEOUT = 15000L;
+    private static final long SPAWN_POLL_INTERVAL = 100L;
+
+    private final Task task;
+    private final File stateFile;
+    private final int idleSeconds;
+
+    // access token of the daemon connected to last
+    private String token;
+
+    public CompressionDaemonClient(final Task task, final File stateFile, final int idleSeconds) {
+        this.task = task;
+        this.stateFile = stateFile;
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * @return false when no daemon could be reached, and the files still have to be compressed in-process
+     * @throws BuildException
+     *             when the daemon failed to compress the files
+     */
+    public boolean execute(final File baseDir, final Properties attributes, final String[] files)
+            throws BuildException {
+        Socket socket = connect();
+        if (socket == null) {
+            spawn();
+            final long deadline = System.currentTimeMillis() + SPAWN_TIMEOUT;
+            while (socket == null && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(SPAWN_POLL_INTERVAL);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                socket = connect();
+            }
+            if (socket == null) {
+                return false;
+            }
+        }
+
+        try {
+            try {
+                socket.setSoTimeout(READ_TIMEOUT);
+                return send(socket, baseDir, attributes, files);
+            } finally {
+                socket.close();
+            }
+        } catch (final SocketTimeoutException e) {
+            task.log("Compression daemon did not answer within " + READ_TIMEOUT / 1000 + "s", Project.MSG_VERBOSE);
+            dropDaemon();
+            return false;
+        } catch (final IOException e) {
+            task.log("Lost connection to the compression daemon: " + e.getMessage(), Project.MSG_VERBOSE);
+            return false;
+        }
+    }
+
+    private boolean send(final Socket socket, final File baseDir, final Properties attributes, final String[] files)
+            throws IOException, BuildException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(token);
+        out.writeInt(attributes.size() + 1);
+        out.writeUTF(CompressionDaemon.BASEDIR_ATTRIBUTE);
+        out.writeUTF(baseDir.getAbsolutePath());
+        for (final String name : attributes.stringPropertyNames()) {
+            out.writeUTF(name);
+            out.writeUTF(attributes.getProperty(name));
+        }
+        out.writeInt(files.length);
+        for (final String file : files) {
+            out.writeUTF(file);
+        }
+        out.flush();
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        while (in.readByte() == CompressionDaemon.RESPONSE_MESSAGE) {
+            final int level = in.readInt();
+            task.log(in.readUTF(), level);
+        }
+        final boolean success = in.readBoolean();
+        final String error = in.readUTF();
+        if (!success) {
+            throw new BuildException(error);
+        }
+        return true;
+    }
+
+    private Socket connect() {
+        final Properties state = CompressionDaemon.readState(stateFile);
+        if (state == null) {
+            return null;
+        }
+
+        final Socket socket = new Socket();
+        try {
+            final int port = Integer.parseInt(state.getProperty(CompressionDaemon.STATE_PORT));
+            socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), CONNECT_TIMEOUT);
+            token = state.getProperty(CompressionDaemon.STATE_TOKEN);
+            return socket;
+        } catch (final IOException e) {
+            closeQuietly(socket);
+            return null;
+        } catch (final NumberFormatException e) {
+            closeQuietly(socket);
+            return null;
+        }
+    }
+
+    /**
+     * Forgets a daemon that stopped answering, so that the next build spawns a new one. The daemon does not remove
+     * the state file of another.
+     */
+    private void dropDaemon() {
+        final Properties state = CompressionDaemon.readState(stateFile);
+        if (state != null && token.equals(state.getProperty(CompressionDaemon.STATE_TOKEN))) {
+            stateFile.delete();
+        }
+    }
+
+    private void spawn() {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(getClasspath());
+        command.add(CompressionDaemon.class.getName());
+        command.add(stateFile.getAbsolutePath());
+        command.add(String.valueOf(idleSeconds));
+
+        task.log("Starting compression daemon", Project.MSG_VERBOSE);
+        try {
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            // the daemon logs to a file of its own, do not hold on to its pipes
+            process.getOutputStream().close();
+            process.getInputStream().close();
+        } catch (final IOException e) {
+            task.log("Cannot start compression daemon: " + e.getMessage(), Project.MSG_VERBOSE);
+        }
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * @return the attributes a {@link CompressionDaemon} needs to run the task, in their build file form
+     */
+    static Properties getAttributes(final YuiCompressorTask task) {
+        final Properties attributes = new Properties();
+        attributes.setProperty("fromDir", task.fromDir.getAbsolutePath());
+        if (task.toDir != null) {
+            attributes.setProperty("toDir", task.toDir.getAbsolutePath());
+        }
+        if (task.toArchive != null) {
+            attributes.setProperty("toArchive", task.toArchive.getAbsolutePath());
+            attributes.setProperty("archivePrefix", task.archivePrefix);
+            attributes.setProperty("archiveMethod", task.archiveMethod == ZipEntry.STORED ? "stored" : "deflated");
+        }
+        attributes.setProperty("charset", task.charset.name().replace('-', '_'));
+        attributes.setProperty("lineBreakPosition", String.valueOf(task.lineBreakPosition));
+        attributes.setProperty("munge", String.valueOf(task.munge));
+        attributes.setProperty("warn", String.valueOf(task.warn));
+        attributes.setProperty("preserveAllSemiColons", String.valueOf(task.preserveAllSemiColons));
+        attributes.setProperty("optimize", String.valueOf(task.optimize));
+        attributes.setProperty("verbose", String.valueOf(task.verbose));
+        attributes.setProperty("threads", String.valueOf(task.threads));
+        attributes.setProperty("fastScan", String.valueOf(task.fastScan));
+        attributes.setProperty("jsSuffix", task.jsSuffix);
+        attributes.setProperty("cssSuffix", task.cssSuffix);
+        if (task.cacheFile != null) {
+            attributes.setProperty("cacheFile", task.cacheFile.getAbsolutePath());
+        }
+        attributes.setProperty("deduplicate", String.valueOf(task.deduplicate));
+        attributes.setProperty("gzip", String.valueOf(task.gzip));
+        attributes.setProperty("hardLinks", String.valueOf(task.hardLinks));
+        attributes.setProperty("memoryBudget", String.valueOf(task.memoryBudget));
+        attributes.setProperty("memoryCacheSize", String.valueOf(task.memoryCacheSize));
+        attributes.setProperty("ioThreads", String.valueOf(task.ioThreads));
+        attributes.setProperty("level", task.level.name());
+        attributes.setProperty("inlineMaxSize", String.valueOf(task.inlineMaxSize));
+        attributes.setProperty("compressInline", String.valueOf(task.compressInline));
+        attributes.setProperty("readAhead", String.valueOf(task.readAhead));
+        if (task.cacheDir != null) {
+            attributes.setProperty("cacheDir", task.cacheDir.getAbsolutePath());
+        }
+        attributes.setProperty("cacheDirMaxSize", String.valueOf(task.cacheDirMaxSize));
+        attributes.setProperty("deflate", String.valueOf(task.deflate));
+        attributes.setProperty("gzipLevel", String.valueOf(task.gzipLevel));
+        attributes.setProperty("gzipMinSize", String.valueOf(task.gzipMinSize));
+        attributes.setProperty("fingerprint", String.valueOf(task.fingerprint));
+        attributes.setProperty("fingerprintLength", String.valueOf(task.fingerprintLength));
+        if (task.assetManifest != null) {
+            attributes.setProperty("assetManifest", task.assetManifest.getAbsolutePath());
+        }
+        attributes.setProperty("removeStaleFingerprints", String.valueOf(task.removeStaleFingerprints));
+        if (task.reportFile != null) {
+            attributes.setProperty("reportFile", task.reportFile.getAbsolutePath());
+        }
+        attributes.setProperty("reportSlowestFiles", String.valueOf(task.reportSlowestFiles));
+        return attributes;
+    }
+
+    /**
+     * @return the default state file for daemons running the classpath of this task, so that different versions
+     *         of the task never share a daemon; the size and modification time of every classpath entry are part
+     *         of the key, so a jar rebuilt at the same path gets a new daemon
+     */
+    public static File getDefaultStateFile() {
+        final StringBuilder key = new StringBuilder();
+        for (final String entry : getClasspath().split(File.pathSeparator)) {
+            final File file = new File(entry);
+            key.append(entry).append('\n').append(file.length()).append('\n').append(file.lastModified()).append(
+                    '\n');
+        }
+        final String classpathHash = Hashing.sha256().hashString(key, Charsets.UTF_8).toString().substring(0, 16);
+        return new File(new File(System.getProperty("user.home"), ".yui-compressor"), "daemon-" + classpathHash
+                + ".properties");
+    }
+
+    static String getClasspath() {
+        final Set<String> entries = new LinkedHashSet<String>();
+        // the jars of the task and its dependencies, Ant itself is usually loaded by a parent loader
+        for (final Class<?> type : new Class<?>[] { YuiCompressorTask.class, Project.class,
+                JavaScriptCompressor.class, ErrorReporter.class, HtmlCompressor.class, Hashing.class }) {
+            if (type.getProtectionDomain().getCodeSource() != null) {
+                addUrl(entries, type.getProtectionDomain().getCodeSource().getLocation());
+            }
+        }
+
+        final ClassLoader loader = CompressionDaemonClient.class.getClassLoader();
+        if (loader instanceof AntClassLoader) {
+            for (final String entry : ((AntClassLoader) loader).getClasspath().split(File.pathSeparator)) {
+                if (entry.length() > 0) {
+                    entries.add(entry);
+                }
+            }
+        } else if (loader instanceof URLClassLoader) {
+            for (final URL url : ((URLClassLoader) loader).getURLs()) {
+                addUrl(entries, url);
+            }
+        } else {
+            for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                entries.add(entry);
+            }
+        }
+
+        final StringBuilder classpath = new StringBuilder();
+        for (final String entry : entries) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(entry);
+        }
+        return classpath.toString();
+    }
+
+    private static void addUrl(final Set<String> entries, final URL url) {
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                entries.add(new File(url.toURI()).getPath());
+            } catch (final Exception e) {
+                entries.add(url.getPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Compresses content with the {@link FileCompressor}s found on a class path, without Ant. Instances are thread safe,
+ * so one engine can serve a whole application. Options are the attributes of the task, like munge or
+ * lineBreakPosition, and the options of the compressor of the file type; missing options take the defaults of the
+ * task.
+ *
+ * Results compressed in memory can be kept in a least recently used cache bounded in bytes, so that compressing
+ * the same content with the same options again costs a hash and a lookup.
+ */
+public class CompressionEngine {
+
+    private final FileCompressors compressors;
+    private volatile long cacheSize;
+
+    // results by content hash, file type and options, least recently used first
+    private final Map<String, Object> cache = new LinkedHashMap<String, Object>(16, 0.75f, true);
+    private long cachedBytes = 0L;
+    private long cacheHits = 0L;
+    private long cacheMisses = 0L;
+
+    /**
+     * Creates an engine without a result cache.
+     */
+    public CompressionEngine() {
+        this(0L);
+    }
+
+    /**
+     * @param cacheSize
+     *            bytes of results to keep, 0 for no cache
+     */
+    public CompressionEngine(final long cacheSize) {
+        this(CompressionEngine.class.getClassLoader(), cacheSize);
+    }
+
+    /**
+     * @param loader
+     *            class loader to find the compressors with
+     * @param cacheSize
+     *            bytes of results to keep, 0 for no cache
+     * @throws IllegalArgumentException
+     *             when a compressor listed on the class path of the loader cannot be loaded
+     */
+    public CompressionEngine(final ClassLoader loader, final long cacheSize) {
+        this.compressors = FileCompressors.load(loader);
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return the file type of the file name, like .js, or null when no compressor handles it
+     */
+    public String getFileType(final String fileName) {
+        return compressors.getFileType(fileName);
+    }
+
+    public String compress(final String input, final String fileType, final Map<String, String> options)
+            throws IOException {
+        final FileCompressor compressor = getCompressor(fileType);
+        final Map<String, String> normalized = normalize(options);
+        final String key = cacheSize > 0 ? "string:" + fileType + ":" + Hashing.sha256().hashUnencodedChars(input)
+                + ":" + normalized : null;
+        final Object cached = getCached(key);
+        if (cached != null) {
+            return (String) cached;
+        }
+
+        final StringWriter out = new StringWriter(input.length());
+        compressor.compress(new StringReader(input), out, new CompressionContext(this, normalized, null));
+        final String result = out.toString();
+        putCached(key, result, result.length() * 2L);
+        return result;
+    }
+
+    public byte[] compress(final byte[] input, final Charset charset, final String fileType,
+            final Map<String, String> options) throws IOException {
+        final FileCompressor compressor = getCompressor(fileType);
+        final Map<String, String> normalized = normalize(options);
+        final String key = cacheSize > 0 ? "bytes:" + charset.name() + ":" + fileType + ":" + Hashing.sha256()
+                .hashBytes(input) + ":" + normalized : null;
+        final Object cached = getCached(key);
+        if (cached != null) {
+            return ((byte[]) cached).clone();
+        }
+
+        final Reader in = new InputStreamReader(new ByteArrayInputStream(input), charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE));
+        final byte[] result = compress(in, input.length, charset, compressor, normalized, null);
+        putCached(key, result.clone(), result.length);
+        return result;
+    }
+
+    /**
+     * Compresses from a stream to a stream. Results of streams are never cached.
+     */
+    public void compress(final Reader in, final Writer out, final String fileType, final Map<String, String> options)
+            throws IOException {
+        getCompressor(fileType).compress(in, out, new CompressionContext(this, normalize(options), null));
+    }
+
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return bytes of results currently cached
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public synchronized void clearCache() {
+        cache.clear();
+        cachedBytes = 0L;
+    }
+
+    /**
+     * Compresses decoded content into encoded bytes, logging to the given buffer. Used by the task.
+     */
+    byte[] compress(final CharBuffer input, final Charset charset, final String fileType,
+            final Map<String, String> options, final LogBuffer log) throws IOException {
+        final FileCompressor compressor = getCompressor(fileType);
+        final Map<String, String> normalized = normalize(options);
+        final String key = cacheSize > 0 ? "chars:" + charset.name() + ":" + fileType + ":" + Hashing.sha256()
+                .hashUnencodedChars(input) + ":" + normalized : null;
+        final Object cached = getCached(key);
+        if (cached != null) {
+            return ((byte[]) cached).clone();
+        }
+
+        final Reader in = new CharArrayReader(input.array(), input.arrayOffset() + input.position(),
+                input.remaining());
+        final byte[] result = compress(in, input.remaining(), charset, compressor, normalized, log);
+        putCached(key, result.clone(), result.length);
+        return result;
+    }
+
+    /**
+     * Compresses from a stream to a stream with the given compressor, logging to the given buffer. Used by the task.
+     */
+    void compress(final Reader in, final Writer out, final FileCompressor compressor,
+            final Map<String, String> options, final LogBuffer log) throws IOException {
+        compressor.compress(in, out, new CompressionContext(this, normalize(options), log));
+    }
+
+    FileCompressors getCompressors() {
+        return compressors;
+    }
+
+    /**
+     * Grows the cache to at least the given size, keeping the results already cached. Used by the task when several
+     * invocations share one engine.
+     */
+    synchronized void ensureCacheSize(final long size) {
+        cacheSize = Math.max(cacheSize, size);
+    }
+
+    private byte[] compress(final Reader in, final int sizeHint, final Charset charset,
+            final FileCompressor compressor, final Map<String, String> options, final LogBuffer log)
+            throws IOException {
+        // compress into memory, so the sidecars can be written without reading the output back
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(sizeHint);
+        final Writer out = new OutputStreamWriter(bytes, charset);
+        compressor.compress(in, out, new CompressionContext(this, options, log));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private FileCompressor getCompressor(final String fileType) {
+        final FileCompressor compressor = compressors.get(fileType);
+        if (compressor == null) {
+            throw new IllegalArgumentException("No compressor for file type " + fileType);
+        }
+        return compressor;
+    }
+
+    /**
+     * @return the options with case insensitive names, in a stable order for cache keys
+     */
+    private static Map<String, String> normalize(final Map<String, String> options) {
+        final Map<String, String> normalized = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        if (options != null) {
+            normalized.putAll(options);
+        }
+        return normalized;
+    }
+
+    private synchronized Object getCached(final String key) {
+        if (key == null) {
+            return null;
+        }
+        final Object cached = cache.get(key);
+        if (cached != null) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        return cached;
+    }
+
+    private synchronized void putCached(final String key, final Object result, final long bytes) {
+        if (key == null || bytes > cacheSize) {
+            return;
+        }
+        if (cache.put(key, result) == null) {
+            cachedBytes += bytes;
+        }
+
+        // least recently used first
+        final Iterator<Object> values = cache.values().iterator();
+        while (cachedBytes > cacheSize && values.hasNext()) {
+            cachedBytes -= getSize(values.next());
+            values.remove();
+        }
+    }
+
+    private static long getSize(final Object result) {
+        return result instanceof String ? ((String) result).length() * 2L : ((byte[]) result).length;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * Persistent record of the inputs each output was compressed from. An output is up to date when the hash of its
+ * input content, compressor options and tool versions matches the one recorded for it, regardless of file
+ * timestamps.
+ */
+class CompressionManifest {
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private boolean modified = false;
+
+    public CompressionManifest(final File file) {
+        this.file = file;
+    }
+
+    public synchronized void load() throws IOException {
+        entries.clear();
+        modified = false;
+        if (!file.isFile()) {
+            return;
+        }
+
+        final InputStream in = new FileInputStream(file);
+        try {
+            entries.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public synchronized void store() throws IOException {
+        if (!modified) {
+            return;
+        }
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        // never leaves a truncated manifest behind when the build is interrupted
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entries.store(out, "yui-compressor manifest");
+        OutputFiles.writeAtomically(file, out.toByteArray());
+        modified = false;
+    }
+
+    public synchronized boolean isUpToDate(final String path, final String key) {
+        return key.equals(entries.getProperty(path));
+    }
+
+    public synchronized void update(final String path, final String key) {
+        if (!key.equals(entries.setProperty(path, key))) {
+            modified = true;
+        }
+    }
+
+    public synchronized void remove(final String path) {
+        if (entries.remove(path) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the key identifying the given input content compressed with the given options
+     */
+    public static String createKey(final File inFile, final String options) throws IOException {
+        return createKey(Collections.singletonList(inFile), options);
+    }
+
+    /**
+     * Same as {@link #createKey(File, String)}, for an input already read.
+     */
+    public static String createKey(final ByteSource input, final String options) throws IOException {
+        return Hashing.sha256().hashUnencodedChars(input.hash(Hashing.sha256()) + "|" + options).toString();
+    }
+
+    /**
+     * @return the key identifying the given input contents, in this order, compressed with the given options
+     */
+    public static String createKey(final List<File> inFiles, final String options) throws IOException {
+        final StringBuilder key = new StringBuilder();
+        for (final File inFile : inFiles) {
+            key.append(Files.asByteSource(inFile).hash(Hashing.sha256())).append('|');
+        }
+        key.append(options);
+        return Hashing.sha256().hashUnencodedChars(key).toString();
+    }
+}
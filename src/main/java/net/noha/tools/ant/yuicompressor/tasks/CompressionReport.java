@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.noha.tools.ant.yuicompressor.tasks.CompressionTimer.Phase;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Per file timings of one task run, stored as CSV when the report file name ends with .csv and as JSON otherwise.
+ * The CSV lists the files slowest first, the JSON adds the throughput per file type and the slowest files.
+ */
+class CompressionReport {
+
+    private static final String[] COLUMNS = { "path", "type", "inputBytes", "outputBytes", "readMicros",
+            "compressMicros", "writeMicros", "totalMicros" };
+
+    private final File file;
+    private final int slowestFiles;
+    private final List<CompressionTimer> timers = new ArrayList<CompressionTimer>();
+
+    public CompressionReport(final File file, final int slowestFiles) {
+        this.file = file;
+        this.slowestFiles = slowestFiles;
+    }
+
+    public synchronized void add(final CompressionTimer timer) {
+        timers.add(timer);
+    }
+
+    public synchronized void store() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        final List<CompressionTimer> slowestFirst = new ArrayList<CompressionTimer>(timers);
+        Collections.sort(slowestFirst, new Comparator<CompressionTimer>() {
+
+            public int compare(final CompressionTimer a, final CompressionTimer b) {
+                return Long.compare(b.getTotalNanos(), a.getTotalNanos());
+            }
+        });
+
+        final String report = file.getName().endsWith(".csv") ? toCsv(slowestFirst) : toJson(slowestFirst);
+        OutputFiles.writeAtomically(file, report.getBytes(Charsets.UTF_8));
+    }
+
+    private static String toCsv(final List<CompressionTimer> slowestFirst) {
+        final StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            csv.append(i == 0 ? "" : ",").append(COLUMNS[i]);
+        }
+        csv.append('\n');
+
+        for (final CompressionTimer timer : slowestFirst) {
+            final Object[] values = getValues(timer);
+            for (int i = 0; i < values.length; i++) {
+                csv.append(i == 0 ? "" : ",").append(values[i] instanceof String ? quoteCsv((String) values[i])
+                        : values[i]);
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    private String toJson(final List<CompressionTimer> slowestFirst) {
+        final StringBuilder json = new StringBuilder("{\n  \"files\": [");
+        String separator = "\n";
+        for (final CompressionTimer timer : timers) {
+            json.append(separator).append("    ");
+            appendJsonObject(json, COLUMNS, getValues(timer));
+            separator = ",\n";
+        }
+
+        json.append("\n  ],\n  \"types\": [");
+        separator = "\n";
+        for (final Map.Entry<String, long[]> type : getTypeTotals().entrySet()) {
+            final long[] totals = type.getValue();
+            json.append(separator).append("    ");
+            appendJsonObject(json, new String[] { "type", "files", "inputBytes", "outputBytes", "totalMicros",
+                    "megabytesPerSecond" }, new Object[] { type.getKey(), totals[0], totals[1], totals[2],
+                    totals[3] / 1000L, getMegabytesPerSecond(totals[1], totals[3]) });
+            separator = ",\n";
+        }
+
+        json.append("\n  ],\n  \"slowest\": [");
+        separator = "\n";
+        for (final CompressionTimer timer : slowestFirst.subList(0, Math.min(slowestFiles, slowestFirst.size()))) {
+            json.append(separator).append("    ");
+            appendJsonObject(json, new String[] { "path", "totalMicros" }, new Object[] { timer.getPath(),
+                    timer.getTotalNanos() / 1000L });
+            separator = ",\n";
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    /**
+     * @return files, input bytes, output bytes and nanoseconds per file type
+     */
+    private Map<String, long[]> getTypeTotals() {
+        final Map<String, long[]> types = new TreeMap<String, long[]>();
+        for (final CompressionTimer timer : timers) {
+            long[] totals = types.get(timer.getFileType());
+            if (totals == null) {
+                totals = new long[4];
+                types.put(timer.getFileType(), totals);
+            }
+            totals[0]++;
+            totals[1] += timer.getInputBytes();
+            totals[2] += timer.getOutputBytes();
+            totals[3] += timer.getTotalNanos();
+        }
+        return types;
+    }
+
+    private static Object[] getValues(final CompressionTimer timer) {
+        return new Object[] { timer.getPath(), timer.getFileType(), timer.getInputBytes(), timer.getOutputBytes(),
+                timer.getNanos(Phase.READ) / 1000L, timer.getNanos(Phase.COMPRESS) / 1000L,
+                timer.getNanos(Phase.WRITE) / 1000L, timer.getTotalNanos() / 1000L };
+    }
+
+    private static double getMegabytesPerSecond(final long bytes, final long nanos) {
+        final double seconds = Math.max(nanos, 1L) / 1e9;
+        return Math.round(bytes / (1024.0 * 1024.0) / seconds * 1000.0) / 1000.0;
+    }
+
+    private static void appendJsonObject(final StringBuilder json, final String[] names, final Object[] values) {
+        json.append('{');
+        for (int i = 0; i < names.length; i++) {
+            json.append(i == 0 ? "" : ", ");
+            AssetManifest.appendJsonString(json, names[i]);
+            json.append(": ");
+            if (values[i] instanceof String) {
+                AssetManifest.appendJsonString(json, (String) values[i]);
+            } else {
+                json.append(values[i]);
+            }
+        }
+        json.append('}');
+    }
+
+    private static String quoteCsv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
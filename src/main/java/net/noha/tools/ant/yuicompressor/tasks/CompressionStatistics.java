@@ -37,151 +37,381 @@
 package net.noha.tools.ant.yuicompressor.tasks;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
 
 /**
+ * Accumulates compression statistics. All methods are synchronized, so a single instance can be shared by the
+ * compression workers of a task.
+ *
  * @author Viktor Lieskovsky
  */
 public class CompressionStatistics {
 
-    private long fromBytes = 0L;
-    private long toBytes = 0L;
-    private long fileCount = 0L;
+    private final TypeStatistics total = new TypeStatistics(null);
+    private final TypeStatistics xml = new TypeStatistics("XML");
+    private final TypeStatistics html = new TypeStatistics("HTML");
+    private final TypeStatistics xhtml = new TypeStatistics("XHTML");
+    private final TypeStatistics js = new TypeStatistics("JavaScript");
+    private final TypeStatistics css = new TypeStatistics("CSS");
+
+    // the file types of registered compressors, created on first use
+    private final Map<String, TypeStatistics> others = new HashMap<String, TypeStatistics>();
+
+    // inputs whose output was taken from an identical input
+    private long deduplicatedFiles = 0L;
+    private long deduplicatedBytes = 0L;
+    private long deduplicatedNanos = 0L;
+
+    // inputs copied as they are, when compression is disabled
+    private long copiedFiles = 0L;
+    private long copiedBytes = 0L;
+    private long upToDateCopies = 0L;
+
+    // lookups in the shared output cache
+    private long cacheHits = 0L;
+    private long cacheMisses = 0L;
+    private long cacheEvictions = 0L;
 
-    private long xmlFromBytes = 0L;
-    private long xmlToBytes = 0L;
-    private long xmlFileCount = 0L;
+    // lookups in the in-memory result cache shared by the invocations of the task
+    private long memoryCacheHits = 0L;
+    private long memoryCacheMisses = 0L;
+    private long memoryCacheBytes = 0L;
+    private long memoryCacheSize = 0L;
 
-    private long htmlFromBytes = 0L;
-    private long htmlToBytes = 0L;
-    private long htmlFileCount = 0L;
+    public synchronized void addCacheEvictions(final int entries) {
+        cacheEvictions += entries;
+    }
 
-    private long xhtmlFromBytes = 0L;
-    private long xhtmlToBytes = 0L;
-    private long xhtmlFileCount = 0L;
+    public synchronized void addCacheHit() {
+        cacheHits++;
+    }
 
-    private long jsFromBytes = 0L;
-    private long jsToBytes = 0L;
-    private long jsFileCount = 0L;
+    public synchronized void addCacheMiss() {
+        cacheMisses++;
+    }
 
-    private long cssFromBytes = 0L;
-    private long cssToBytes = 0L;
-    private long cssFileCount = 0L;
+    /**
+     * @param hits
+     *            lookups of this run answered by the in-memory cache
+     * @param misses
+     *            lookups of this run that compressed
+     * @param bytes
+     *            memory used by the cache at the end of the run, results of earlier invocations included
+     */
+    public synchronized void setMemoryCache(final long hits, final long misses, final long bytes, final long size) {
+        memoryCacheHits = hits;
+        memoryCacheMisses = misses;
+        memoryCacheBytes = bytes;
+        memoryCacheSize = size;
+    }
 
-    public String getCssStats() {
-        if (cssFileCount == 0) {
-            return "[CSS] No files to compress, or all files already up to date";
+    public synchronized void addCopied(final long bytes) {
+        copiedFiles++;
+        copiedBytes += bytes;
+    }
+
+    public synchronized void addUpToDateCopy() {
+        upToDateCopies++;
+    }
+
+    /**
+     * Counts an input that was not compressed, as an identical input already was.
+     *
+     * @param compressNanos
+     *            time taken to compress the identical input
+     */
+    public synchronized void addDeduplicated(final long bytes, final long compressNanos) {
+        deduplicatedFiles++;
+        deduplicatedBytes += bytes;
+        deduplicatedNanos += compressNanos;
+    }
+
+    /**
+     * @param toBytes
+     *            size of the compressed bundle
+     * @param fromBytes
+     *            accumulated size of all bundle members
+     * @param gzipBytes
+     *            size of the gzipped output as served, or a negative value when no gzip output is produced
+     * @param unchanged
+     *            whether the output already had the compressed content and was not rewritten
+     */
+    public synchronized String getBundleStats(final File outFile, final long toBytes, final int memberCount,
+            final long fromBytes, final String fileType, final long gzipBytes, final boolean unchanged) {
+        // update accumulated statistics, every member counts as a compressed file
+        total.add(fromBytes, toBytes, gzipBytes, memberCount, unchanged);
+        getTypeStatistics(fileType).add(fromBytes, toBytes, gzipBytes, memberCount, unchanged);
+
+        return getSizeStats("bundle of " + memberCount + " files", fromBytes, outFile.getName(), toBytes, gzipBytes,
+                unchanged);
+    }
+
+    public synchronized String getCacheStats() {
+        final long lookups = cacheHits + cacheMisses;
+        if (lookups == 0) {
+            return "[Cache] No cache lookups";
         }
+        final int hitRate = (int) Math.floor((double) cacheHits / (double) lookups * 100);
+        return "[Cache] " + cacheHits + " of " + lookups + " files taken from the cache (" + hitRate
+                + "% hit rate), " + cacheEvictions + " entries evicted";
+    }
 
-        final int percentage = (int) Math.floor((double) cssToBytes / (double) cssFromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) cssFromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) cssToBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+    public synchronized String getMemoryCacheStats() {
+        final long lookups = memoryCacheHits + memoryCacheMisses;
+        if (lookups == 0) {
+            return "[Memory cache] No cache lookups";
+        }
+        final int hitRate = (int) Math.floor((double) memoryCacheHits / (double) lookups * 100);
+        final long kBytes = (long) Math.floor((double) memoryCacheBytes / (double) 1024);
+        final long sizeKBytes = (long) Math.floor((double) memoryCacheSize / (double) 1024);
+        return "[Memory cache] " + memoryCacheHits + " of " + lookups + " results taken from memory (" + hitRate
+                + "% hit rate), " + kBytes + "KB of " + sizeKBytes + "KB used";
+    }
 
-        return "[CSS] Compressed " + cssFileCount + " files to " + percentage + "% (" + fromKBytes + "KB to "
-                + toKBytes + "KB, saving " + saved + "KB)";
+    public synchronized String getCssStats() {
+        return css.getStats();
+    }
+
+    /**
+     * @param nanos
+     *            wall clock time taken by all copies
+     */
+    public synchronized String getCopyStats(final long nanos) {
+        final long kBytes = (long) Math.floor((double) copiedBytes / (double) 1024);
+        final double seconds = Math.max(nanos, 1L) / 1e9;
+        final long kBytesPerSecond = (long) Math.floor(copiedBytes / 1024.0 / seconds);
+        return "[Copy] Copied " + copiedFiles + " files (" + kBytes + "KB) in " + nanos / 1000000L + "ms at "
+                + kBytesPerSecond + "KB/s, " + upToDateCopies + " files already up to date";
+    }
+
+    public synchronized String getDeduplicationStats() {
+        if (deduplicatedFiles == 0) {
+            return "[Deduplication] No duplicate inputs";
+        }
+        final long kBytes = (long) Math.floor((double) deduplicatedBytes / (double) 1024);
+        return "[Deduplication] Reused outputs for " + deduplicatedFiles + " duplicate files (" + kBytes
+                + "KB not compressed, saving " + deduplicatedNanos / 1000000L + "ms)";
     }
 
     public String getFileStats(final File inFile, final File outFile, final String fileType) {
+        return getFileStats(inFile, outFile, outFile.length(), fileType, -1L, false);
+    }
+
+    /**
+     * @param toBytes
+     *            size of the output, which may be an archive entry rather than outFile itself
+     * @param gzipBytes
+     *            size of the gzipped output as served, or a negative value when no gzip output is produced
+     * @param unchanged
+     *            whether the output already had the compressed content and was not rewritten
+     */
+    public synchronized String getFileStats(final File inFile, final File outFile, final long toBytes,
+            final String fileType, final long gzipBytes, final boolean unchanged) {
+        final long fromBytes = inFile.length();
+
         // update accumulated statistics
-        fromBytes += inFile.length();
-        toBytes += outFile.length();
-        fileCount++;
+        total.add(fromBytes, toBytes, gzipBytes, 1, unchanged);
+        getTypeStatistics(fileType).add(fromBytes, toBytes, gzipBytes, 1, unchanged);
 
-        if (fileType.equals(FileType.XML_FILE)) {
-            xmlFromBytes += inFile.length();
-            xmlToBytes += outFile.length();
-            xmlFileCount++;
-        } else if (fileType.equals(FileType.HTML_FILE)) {
-            htmlFromBytes += inFile.length();
-            htmlToBytes += outFile.length();
-            htmlFileCount++;
-        } else if (fileType.equals(FileType.XHTML_FILE)) {
-            xhtmlFromBytes += inFile.length();
-            xhtmlToBytes += outFile.length();
-            xhtmlFileCount++;
-        } else if (fileType.equals(FileType.JS_FILE)) {
-            jsFromBytes += inFile.length();
-            jsToBytes += outFile.length();
-            jsFileCount++;
-        } else {
-            cssFromBytes += inFile.length();
-            cssToBytes += outFile.length();
-            cssFileCount++;
-        }
+        return getSizeStats(inFile.getName(), fromBytes, outFile.getName(), toBytes, gzipBytes, unchanged);
+    }
 
-        final int percentage = (int) Math.floor((double) outFile.length() / (double) inFile.length() * 100);
-        return "[" + percentage + "%] " + inFile.getName() + " [" + inFile.length() + "] ---> " + outFile.getName()
-                + " [" + outFile.length() + "]";
+    public synchronized String getHtmlStats() {
+        return html.getStats();
     }
 
-    public String getHtmlStats() {
-        if (htmlFileCount == 0) {
-            return "[HTML] No files to compress, or all files already up to date";
-        }
+    public synchronized String getJsStats() {
+        return js.getStats();
+    }
 
-        final int percentage = (int) Math.floor((double) htmlToBytes / (double) htmlFromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) htmlFromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) htmlToBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+    public synchronized String getStats(final String fileType, final String label) {
+        return getOtherStatistics(fileType, label).getStats();
+    }
 
-        return "[HTML] Compressed " + htmlFileCount + " files to " + percentage + "% (" + fromKBytes + "KB to "
-                + toKBytes + "KB, saving " + saved + "KB)";
+    public synchronized String getTotalStats() {
+        return total.getStats();
     }
 
-    public String getJsStats() {
-        if (jsFileCount == 0) {
-            return "[JavaScript] No files to compress, or all files already up to date";
-        }
+    public synchronized boolean hasCacheLookups() {
+        return cacheHits > 0 || cacheMisses > 0;
+    }
+
+    public synchronized boolean hasCopies() {
+        return copiedFiles > 0 || upToDateCopies > 0;
+    }
 
-        final int percentage = (int) Math.floor((double) jsToBytes / (double) jsFromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) jsFromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) jsToBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+    /**
+     * Adds the statistics stored by {@link #store(Properties)}, such as those of another shard.
+     */
+    public synchronized void merge(final Properties properties) {
+        total.merge(properties, "stats.total.");
+        for (final String name : properties.stringPropertyNames()) {
+            if (name.startsWith("stats.type.") && name.endsWith(".files")) {
+                final String fileType = name.substring("stats.type.".length(), name.length() - ".files".length());
+                getTypeStatistics(fileType).merge(properties, "stats.type." + fileType + ".");
+            }
+        }
 
-        return "[JavaScript] Compressed " + jsFileCount + " files to " + percentage + "% (" + fromKBytes + "KB to "
-                + toKBytes + "KB, saving " + saved + "KB)";
+        deduplicatedFiles += getLong(properties, "stats.deduplicated.files");
+        deduplicatedBytes += getLong(properties, "stats.deduplicated.bytes");
+        deduplicatedNanos += getLong(properties, "stats.deduplicated.nanos");
+        copiedFiles += getLong(properties, "stats.copied.files");
+        copiedBytes += getLong(properties, "stats.copied.bytes");
+        upToDateCopies += getLong(properties, "stats.copied.upToDate");
+        cacheHits += getLong(properties, "stats.cache.hits");
+        cacheMisses += getLong(properties, "stats.cache.misses");
+        cacheEvictions += getLong(properties, "stats.cache.evictions");
     }
 
-    public String getTotalStats() {
-        if (fileCount == 0) {
-            return "No files to compress, or all files already up to date";
+    /**
+     * Stores the accumulated statistics, so that they can be merged with others later.
+     */
+    public synchronized void store(final Properties properties) {
+        total.store(properties, "stats.total.");
+        store(properties, FileType.XML_FILE, xml);
+        store(properties, FileType.HTML_FILE, html);
+        store(properties, FileType.XHTML_FILE, xhtml);
+        store(properties, FileType.JS_FILE, js);
+        store(properties, FileType.CSS_FILE, css);
+        for (final Map.Entry<String, TypeStatistics> entry : others.entrySet()) {
+            store(properties, entry.getKey(), entry.getValue());
         }
 
+        properties.setProperty("stats.deduplicated.files", String.valueOf(deduplicatedFiles));
+        properties.setProperty("stats.deduplicated.bytes", String.valueOf(deduplicatedBytes));
+        properties.setProperty("stats.deduplicated.nanos", String.valueOf(deduplicatedNanos));
+        properties.setProperty("stats.copied.files", String.valueOf(copiedFiles));
+        properties.setProperty("stats.copied.bytes", String.valueOf(copiedBytes));
+        properties.setProperty("stats.copied.upToDate", String.valueOf(upToDateCopies));
+        properties.setProperty("stats.cache.hits", String.valueOf(cacheHits));
+        properties.setProperty("stats.cache.misses", String.valueOf(cacheMisses));
+        properties.setProperty("stats.cache.evictions", String.valueOf(cacheEvictions));
+    }
+
+    private static void store(final Properties properties, final String fileType, final TypeStatistics stats) {
+        stats.store(properties, "stats.type." + fileType + ".");
+    }
+
+    private static long getLong(final Properties properties, final String name) {
+        final String value = properties.getProperty(name);
+        return value == null ? 0L : Long.parseLong(value.trim());
+    }
+
+    public synchronized String getXhtmlStats() {
+        return xhtml.getStats();
+    }
+
+    public synchronized String getXmlStats() {
+        return xml.getStats();
+    }
+
+    private static String getSizeStats(final String from, final long fromBytes, final String to, final long toBytes,
+            final long gzipBytes, final boolean unchanged) {
         final int percentage = (int) Math.floor((double) toBytes / (double) fromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) fromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) toBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+        return "[" + percentage + "%] " + from + " [" + fromBytes + "] ---> " + to + " [" + toBytes + "]"
+                + (gzipBytes < 0 ? "" : " [gzip " + gzipBytes + "]") + (unchanged ? " (unchanged)" : "");
+    }
 
-        return "Compressed " + fileCount + " files to " + percentage + "% (" + fromKBytes + "KB to " + toKBytes
-                + "KB, saving " + saved + "KB)";
+    private TypeStatistics getTypeStatistics(final String fileType) {
+        if (fileType.equals(FileType.XML_FILE)) {
+            return xml;
+        } else if (fileType.equals(FileType.HTML_FILE)) {
+            return html;
+        } else if (fileType.equals(FileType.XHTML_FILE)) {
+            return xhtml;
+        } else if (fileType.equals(FileType.JS_FILE)) {
+            return js;
+        } else if (fileType.equals(FileType.CSS_FILE)) {
+            return css;
+        }
+        return getOtherStatistics(fileType, fileType.substring(1).toUpperCase(Locale.ROOT));
     }
 
-    public String getXhtmlStats() {
-        if (xhtmlFileCount == 0) {
-            return "[XHTML] No files to compress, or all files already up to date";
+    private TypeStatistics getOtherStatistics(final String fileType, final String label) {
+        TypeStatistics stats = others.get(fileType);
+        if (stats == null) {
+            stats = new TypeStatistics(label);
+            others.put(fileType, stats);
         }
+        return stats;
+    }
 
-        final int percentage = (int) Math.floor((double) xhtmlToBytes / (double) xhtmlFromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) xhtmlFromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) xhtmlToBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+    /**
+     * Accumulated sizes of one file type, or of all files when no label is given.
+     */
+    private static class TypeStatistics {
 
-        return "[XHTML] Compressed " + xhtmlFileCount + " files to " + percentage + "% (" + fromKBytes + "KB to "
-                + toKBytes + "KB, saving " + saved + "KB)";
-    }
+        private final String label;
 
-    public String getXmlStats() {
-        if (xmlFileCount == 0) {
-            return "[XML] No files to compress, or all files already up to date";
+        private long fromBytes = 0L;
+        private long toBytes = 0L;
+        private long fileCount = 0L;
+
+        private long gzipBytes = 0L;
+        private long gzipFileCount = 0L;
+
+        private long unchangedCount = 0L;
+
+        TypeStatistics(final String label) {
+            this.label = label;
         }
 
-        final int percentage = (int) Math.floor((double) xmlToBytes / (double) xmlFromBytes * 100);
-        final long fromKBytes = (long) Math.floor((double) xmlFromBytes / (double) 1024);
-        final long toKBytes = (long) Math.floor((double) xmlToBytes / (double) 1024);
-        final long saved = fromKBytes - toKBytes;
+        void add(final long from, final long to, final long gzip, final int files, final boolean unchanged) {
+            fromBytes += from;
+            toBytes += to;
+            fileCount += files;
+            if (unchanged) {
+                unchangedCount += files;
+            }
 
-        return "[XML] Compressed " + xmlFileCount + " files to " + percentage + "% (" + fromKBytes + "KB to "
-                + toKBytes + "KB, saving " + saved + "KB)";
-    }
+            if (gzip >= 0) {
+                gzipBytes += gzip;
+                gzipFileCount += files;
+            }
+        }
+
+        void merge(final Properties properties, final String prefix) {
+            fromBytes += getLong(properties, prefix + "fromBytes");
+            toBytes += getLong(properties, prefix + "toBytes");
+            fileCount += getLong(properties, prefix + "files");
+            gzipBytes += getLong(properties, prefix + "gzipBytes");
+            gzipFileCount += getLong(properties, prefix + "gzipFiles");
+            unchangedCount += getLong(properties, prefix + "unchanged");
+        }
+
+        void store(final Properties properties, final String prefix) {
+            properties.setProperty(prefix + "fromBytes", String.valueOf(fromBytes));
+            properties.setProperty(prefix + "toBytes", String.valueOf(toBytes));
+            properties.setProperty(prefix + "files", String.valueOf(fileCount));
+            properties.setProperty(prefix + "gzipBytes", String.valueOf(gzipBytes));
+            properties.setProperty(prefix + "gzipFiles", String.valueOf(gzipFileCount));
+            properties.setProperty(prefix + "unchanged", String.valueOf(unchangedCount));
+        }
 
+        String getStats() {
+            final String prefix = label == null ? "" : "[" + label + "] ";
+            if (fileCount == 0) {
+                return prefix + "No files to compress, or all files already up to date";
+            }
+
+            final int percentage = (int) Math.floor((double) toBytes / (double) fromBytes * 100);
+            final long fromKBytes = (long) Math.floor((double) fromBytes / (double) 1024);
+            final long toKBytes = (long) Math.floor((double) toBytes / (double) 1024);
+            final long saved = fromKBytes - toKBytes;
+
+            String stats = prefix + "Compressed " + fileCount + " files to " + percentage + "% (" + fromKBytes
+                    + "KB to " + toKBytes + "KB, saving " + saved + "KB)";
+            if (gzipFileCount > 0) {
+                final long gzipKBytes = (long) Math.floor((double) gzipBytes / (double) 1024);
+                stats += ", " + gzipKBytes + "KB gzipped";
+            }
+            if (unchangedCount > 0) {
+                stats += ", " + unchangedCount + " unchanged";
+            }
+            return stats;
+        }
+    }
 }
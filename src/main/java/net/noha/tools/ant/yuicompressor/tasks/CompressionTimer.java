@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.Locale;
+
+/**
+ * Times the read, compress and write phases of one file or bundle. Each phase is also emitted as a
+ * {@link CompressionEvent} when the JVM supports flight recorder events.
+ */
+class CompressionTimer {
+
+    enum Phase {
+        READ, COMPRESS, WRITE
+    }
+
+    private static final boolean FLIGHT_RECORDER = isFlightRecorderAvailable();
+
+    private final String path;
+    private final String fileType;
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] bytes = new long[Phase.values().length];
+
+    private long start;
+    private Object event;
+
+    public CompressionTimer(final String path, final String fileType) {
+        this.path = path;
+        this.fileType = fileType;
+    }
+
+    public void begin() {
+        if (FLIGHT_RECORDER) {
+            event = CompressionEvent.start();
+        }
+        start = System.nanoTime();
+    }
+
+    /**
+     * Ends the phase started by the last {@link #begin()}.
+     */
+    public void end(final Phase phase, final long phaseBytes) {
+        nanos[phase.ordinal()] += System.nanoTime() - start;
+        bytes[phase.ordinal()] += phaseBytes;
+        if (event != null) {
+            CompressionEvent.finish(event, path, fileType, phase.name().toLowerCase(Locale.ROOT), phaseBytes);
+            event = null;
+        }
+    }
+
+    /**
+     * Adds bytes to a phase without timing it, like the input of a file whose output was reused.
+     */
+    public void count(final Phase phase, final long phaseBytes) {
+        bytes[phase.ordinal()] += phaseBytes;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public long getInputBytes() {
+        return bytes[Phase.READ.ordinal()];
+    }
+
+    public long getOutputBytes() {
+        return bytes[Phase.WRITE.ordinal()];
+    }
+
+    public long getNanos(final Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0L;
+        for (final long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+        return total;
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, CompressionTimer.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException e) {
+            return false;
+        } catch (final LinkageError e) {
+            return false;
+        }
+    }
+}
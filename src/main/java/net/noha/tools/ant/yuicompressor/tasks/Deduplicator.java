@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the inputs compressed during one run by content, so that duplicate inputs reuse the output of the first
+ * one. A duplicate arriving while its original is still being compressed waits for it.
+ */
+class Deduplicator {
+
+    /**
+     * Output of the first input with a given content.
+     */
+    static class Original {
+
+        private final File file;
+        private final long compressNanos;
+
+        Original(final File file, final long compressNanos) {
+            this.file = file;
+            this.compressNanos = compressNanos;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getCompressNanos() {
+            return compressNanos;
+        }
+    }
+
+    // marks content whose original is still being compressed
+    private static final Original PENDING = new Original(null, 0L);
+
+    // content whose original failed, duplicates compress on their own
+    private static final Original FAILED = new Original(null, 0L);
+
+    private final Map<String, Original> originals = new HashMap<String, Original>();
+
+    /**
+     * @return the original output for the content, or null when the caller is the first with this content and has
+     *         to {@link #complete} it
+     */
+    public synchronized Original claim(final String contentKey) throws InterruptedException {
+        Original original = originals.get(contentKey);
+        if (original == null) {
+            originals.put(contentKey, PENDING);
+            return null;
+        }
+        while (original == PENDING) {
+            wait();
+            original = originals.get(contentKey);
+        }
+        return original == FAILED ? null : original;
+    }
+
+    /**
+     * Records the output of a claimed content, null when compressing it failed.
+     */
+    public synchronized void complete(final String contentKey, final File file, final long compressNanos) {
+        originals.put(contentKey, file == null ? FAILED : new Original(file, compressNanos));
+        notifyAll();
+    }
+}
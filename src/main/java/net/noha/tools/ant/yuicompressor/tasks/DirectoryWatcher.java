@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree for changed and deleted files. Directories created later are watched as well, and the
+ * files found in them are reported as changed.
+ */
+class DirectoryWatcher implements Closeable {
+
+    /**
+     * Selects the watched files and takes their changes. Paths are relative to the watched directory.
+     */
+    interface Handler {
+
+        /**
+         * @return all selected files, the whole tree is scanned when events were lost
+         */
+        String[] scan();
+
+        /**
+         * @return true when a changed file is selected
+         */
+        boolean isSelected(String file);
+
+        /**
+         * Takes the changed and deleted files of one burst of events.
+         */
+        void apply(String[] changedFiles, String[] deletedFiles);
+    }
+
+    /**
+     * Paths relative to the watched directory, collected over one burst of events.
+     */
+    static class Changes {
+
+        private final Set<String> changed = new TreeSet<String>();
+        private final Set<String> deleted = new TreeSet<String>();
+        private boolean overflow = false;
+
+        public Set<String> getChanged() {
+            return changed;
+        }
+
+        public Set<String> getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return true when events were lost and the whole tree has to be rescanned
+         */
+        public boolean isOverflow() {
+            return overflow;
+        }
+
+        void change(final String path) {
+            deleted.remove(path);
+            changed.add(path);
+        }
+
+        void delete(final String path) {
+            changed.remove(path);
+            deleted.add(path);
+        }
+    }
+
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    public DirectoryWatcher(final File root) throws IOException {
+        this.root = root.toPath().toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(this.root, null);
+    }
+
+    /**
+     * Blocks until something changes, then keeps collecting events until none arrived for quietMillis.
+     */
+    public Changes awaitChanges(final long quietMillis) throws InterruptedException, IOException {
+        final Changes changes = new Changes();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            collect(key, changes);
+            key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    /**
+     * Passes changes to the handler until the thread is interrupted.
+     *
+     * @param knownFiles
+     *            the selected files when watching starts, the deleted ones are looked up among them
+     * @param rescan
+     *            true to scan the tree on every change, when files cannot be selected one at a time
+     */
+    public void watch(final String[] knownFiles, final long quietMillis, final boolean rescan,
+            final Handler handler) throws InterruptedException, IOException {
+        final Set<String> known = new TreeSet<String>(Arrays.asList(knownFiles));
+        while (true) {
+            final Changes changes = awaitChanges(quietMillis);
+
+            final List<String> changedFiles = new ArrayList<String>();
+            final Set<String> deletedFiles = new TreeSet<String>();
+            if (changes.isOverflow() || rescan) {
+                final List<String> files = Arrays.asList(handler.scan());
+                changedFiles.addAll(files);
+                for (final String file : known) {
+                    if (!files.contains(file)) {
+                        deletedFiles.add(file);
+                    }
+                }
+            } else {
+                for (final String file : changes.getChanged()) {
+                    if (handler.isSelected(file)) {
+                        changedFiles.add(file);
+                    }
+                }
+                // a deleted directory takes all known files below it along
+                for (final String deleted : changes.getDeleted()) {
+                    for (final String file : known) {
+                        if (file.equals(deleted) || file.startsWith(deleted + File.separator)) {
+                            deletedFiles.add(file);
+                        }
+                    }
+                }
+            }
+            known.removeAll(deletedFiles);
+            known.addAll(changedFiles);
+            if (!changedFiles.isEmpty() || !deletedFiles.isEmpty()) {
+                handler.apply(changedFiles.toArray(new String[changedFiles.size()]), deletedFiles
+                        .toArray(new String[deletedFiles.size()]));
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void collect(final WatchKey key, final Changes changes) throws IOException {
+        final Path directory = directories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                changes.overflow = true;
+                continue;
+            }
+
+            final Path path = directory.resolve((Path) event.context());
+            final String relativePath = root.relativize(path).toString();
+            if (event.kind() == ENTRY_DELETE) {
+                changes.delete(relativePath);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == ENTRY_CREATE) {
+                    register(path, changes);
+                }
+            } else if (Files.isRegularFile(path)) {
+                changes.change(relativePath);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Watches the directory and all directories below it, reporting the files found to changes when given.
+     */
+    private void register(final Path start, final Changes changes) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (changes != null && attrs.isRegularFile()) {
+                    changes.change(root.relativize(file).toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
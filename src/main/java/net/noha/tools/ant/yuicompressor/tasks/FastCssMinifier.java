@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+/**
+ * Strips comments and whitespace from CSS in a single pass, without parsing. Strings, url() values and comments
+ * starting with /*! are copied as they are. Whitespace is only removed next to characters where it can never be
+ * significant, so a descendant combinator before a pseudo class or the spaces around + and - in calc() survive.
+ */
+class FastCssMinifier {
+
+    // no whitespace is needed after these characters, or before the second set
+    private static final String NO_SPACE_AFTER = "{};,>:(";
+    private static final String NO_SPACE_BEFORE = "{};,>)!";
+
+    private final String in;
+    private final StringBuilder out;
+    private int pos = 0;
+    private boolean pendingSpace = false;
+
+    private FastCssMinifier(final String in) {
+        this.in = in;
+        this.out = new StringBuilder(in.length());
+    }
+
+    static String minify(final String input) {
+        return new FastCssMinifier(input).minify();
+    }
+
+    private String minify() {
+        while (pos < in.length()) {
+            final char c = in.charAt(pos);
+            if (c == '/' && in.startsWith("/*!", pos)) {
+                copyUntil(in.indexOf("*/", pos + 3), 2);
+                out.append('\n');
+                pendingSpace = false;
+            } else if (c == '/' && in.startsWith("/*", pos)) {
+                final int end = in.indexOf("*/", pos + 2);
+                pos = end < 0 ? in.length() : end + 2;
+                pendingSpace = true;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+                pendingSpace = true;
+            } else if (c == '"' || c == '\'') {
+                writeSpace(c);
+                copyString(c);
+            } else if (c == '(' && endsWithUrl()) {
+                out.append(c);
+                pos++;
+                copyUrl();
+            } else {
+                writeSpace(c);
+                // the last declaration of a block needs no semicolon
+                if (c == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+                    out.setLength(out.length() - 1);
+                }
+                out.append(c);
+                pos++;
+            }
+        }
+        return out.toString();
+    }
+
+    private void writeSpace(final char next) {
+        if (pendingSpace && out.length() > 0) {
+            final char last = out.charAt(out.length() - 1);
+            if (NO_SPACE_AFTER.indexOf(last) < 0 && NO_SPACE_BEFORE.indexOf(next) < 0 && last != '\n') {
+                out.append(' ');
+            }
+        }
+        pendingSpace = false;
+    }
+
+    private void copyString(final char quote) {
+        out.append(quote);
+        pos++;
+        while (pos < in.length()) {
+            final char c = in.charAt(pos++);
+            out.append(c);
+            if (c == '\\' && pos < in.length()) {
+                out.append(in.charAt(pos++));
+            } else if (c == quote) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Copies an unquoted url() value up to its closing parenthesis, quoted values are copied as strings.
+     */
+    private void copyUrl() {
+        while (pos < in.length() && Character.isWhitespace(in.charAt(pos))) {
+            pos++;
+        }
+        if (pos < in.length() && (in.charAt(pos) == '"' || in.charAt(pos) == '\'')) {
+            return;
+        }
+        copyUntil(in.indexOf(')', pos), 0);
+    }
+
+    private void copyUntil(final int end, final int include) {
+        final int stop = end < 0 ? in.length() : end + include;
+        out.append(in, pos, stop);
+        pos = stop;
+    }
+
+    private boolean endsWithUrl() {
+        final int length = out.length();
+        return length >= 3 && out.substring(length - 3).equalsIgnoreCase("url");
+    }
+}
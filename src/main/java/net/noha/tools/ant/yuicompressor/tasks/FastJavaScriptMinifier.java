@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Strips comments and whitespace from JavaScript in a single pass, without parsing. Strings, template literals and
+ * regular expression literals are copied as they are, and so are comments starting with /*!. A line break is kept
+ * where automatic semicolon insertion may depend on it, so code without semicolons keeps working. A slash after a
+ * closing brace may start a regular expression, as in {@code if (x) { y() } / +/.test(s)}, or be a division, as in
+ * {@code x = {} / 2}. It is taken for a regular expression only when a closing slash follows on the same line before
+ * any quote, and the regular expression is then copied as it is, so that its bytes are kept either way. Nothing is
+ * renamed or rewritten, which makes it much faster but less effective than the YUI Compressor.
+ */
+class FastJavaScriptMinifier {
+
+    // keywords after which a slash starts a regular expression rather than a division
+    private static final Set<String> REGEX_KEYWORDS = new HashSet<String>(Arrays.asList("return", "typeof",
+            "instanceof", "in", "of", "new", "delete", "void", "throw", "case", "do", "else", "yield", "await"));
+
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final String in;
+    private final StringBuilder out;
+    private int pos = 0;
+
+    // last significant character written, the word it ended if any, and whether it ended a regular expression
+    private char last = 0;
+    private String lastWord = null;
+    private boolean lastRegex = false;
+
+    private FastJavaScriptMinifier(final String in) {
+        this.in = in;
+        this.out = new StringBuilder(in.length());
+    }
+
+    static String minify(final String input) {
+        return new FastJavaScriptMinifier(input).minify();
+    }
+
+    private String minify() {
+        while (pos < in.length()) {
+            final char c = in.charAt(pos);
+            if (c == '/' && startsWith("/*!")) {
+                copyLicense();
+            } else if (Character.isWhitespace(c) || c == '/' && (startsWith("//") || startsWith("/*"))) {
+                skipGap();
+            } else if (c == '"' || c == '\'' || c == '`') {
+                copyString(c);
+            } else if (c == '/' && isRegexAllowed()) {
+                copyRegex();
+            } else if (isWordPart(c)) {
+                copyWord();
+            } else {
+                out.append(c);
+                pos++;
+                setLast(c, null, false);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Skips whitespace and comments, and writes the line break or space that has to separate what surrounds them.
+     */
+    private void skipGap() {
+        boolean lineBreak = false;
+        while (pos < in.length()) {
+            final char c = in.charAt(pos);
+            if (c == '/' && startsWith("//")) {
+                while (pos < in.length() && in.charAt(pos) != '\n' && in.charAt(pos) != '\r') {
+                    pos++;
+                }
+            } else if (c == '/' && startsWith("/*") && !startsWith("/*!")) {
+                final int end = in.indexOf("*/", pos + 2);
+                final int stop = end < 0 ? in.length() : end + 2;
+                lineBreak |= in.substring(pos, stop).indexOf('\n') >= 0;
+                pos = stop;
+            } else if (Character.isWhitespace(c)) {
+                lineBreak |= c == '\n' || c == '\r' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR;
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        if (pos >= in.length() || last == 0) {
+            return;
+        }
+        final char next = in.charAt(pos);
+        if (lineBreak && endsStatement() && startsStatement(next)) {
+            out.append('\n');
+        } else if (needsSpace(next)) {
+            out.append(' ');
+        }
+    }
+
+    private boolean endsStatement() {
+        return isWordPart(last) || lastRegex || ")]}\"'`+-".indexOf(last) >= 0;
+    }
+
+    private static boolean startsStatement(final char next) {
+        return isWordPart(next) || "([{\"'`+-!~/".indexOf(next) >= 0;
+    }
+
+    /**
+     * @return true when the next character would form a different token together with the last one
+     */
+    private boolean needsSpace(final char next) {
+        if ((isWordPart(last) || lastRegex) && isWordPart(next)) {
+            return true;
+        }
+        // 1 .toString() is not 1.toString()
+        if (next == '.' && lastWord != null && Character.isDigit(lastWord.charAt(0))) {
+            return true;
+        }
+        return (last == '+' || last == '-' || last == '/') && next == last && !lastRegex;
+    }
+
+    private boolean isRegexAllowed() {
+        if (last == 0) {
+            return true;
+        }
+        if (lastRegex) {
+            return false;
+        }
+        if (lastWord != null) {
+            return REGEX_KEYWORDS.contains(lastWord);
+        }
+        // a postfix ++ or -- ends an operand
+        if ((last == '+' || last == '-') && out.length() > 1 && out.charAt(out.length() - 2) == last) {
+            return false;
+        }
+        if (last == '}') {
+            return isRegexAfterBrace();
+        }
+        return ")]\"'`".indexOf(last) < 0;
+    }
+
+    /**
+     * @return true when the slash at pos, after a closing brace, is followed by the rest of a regular expression on
+     *         the same line, before any quote that would otherwise be taken for the end of one
+     */
+    private boolean isRegexAfterBrace() {
+        boolean inClass = false;
+        for (int i = pos + 1; i < in.length(); i++) {
+            final char c = in.charAt(i);
+            if (c == '\n' || c == '\r' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR || c == '"' || c == '\''
+                    || c == '`') {
+                return false;
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                // an empty regular expression or a comment right after it is not, the slash is a division
+                return i > pos + 1 && i + 1 < in.length() ? in.charAt(i + 1) != '/' && in.charAt(i + 1) != '*'
+                        : i > pos + 1;
+            }
+        }
+        return false;
+    }
+
+    private void copyLicense() {
+        final int end = in.indexOf("*/", pos + 3);
+        final int stop = end < 0 ? in.length() : end + 2;
+        if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') {
+            out.append('\n');
+        }
+        out.append(in, pos, stop).append('\n');
+        pos = stop;
+    }
+
+    private void copyString(final char quote) {
+        out.append(quote);
+        pos++;
+        while (pos < in.length()) {
+            final char c = in.charAt(pos++);
+            out.append(c);
+            if (c == '\\' && pos < in.length()) {
+                out.append(in.charAt(pos++));
+            } else if (c == quote) {
+                break;
+            }
+        }
+        setLast(quote, null, false);
+    }
+
+    private void copyRegex() {
+        out.append('/');
+        pos++;
+        boolean inClass = false;
+        while (pos < in.length()) {
+            final char c = in.charAt(pos);
+            if (c == '\n' || c == '\r') {
+                // not a regular expression after all, the rest is copied as code
+                setLast('/', null, false);
+                return;
+            }
+            out.append(c);
+            pos++;
+            if (c == '\\' && pos < in.length()) {
+                out.append(in.charAt(pos++));
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                break;
+            }
+        }
+        // flags
+        while (pos < in.length() && isWordPart(in.charAt(pos))) {
+            out.append(in.charAt(pos++));
+        }
+        setLast(out.charAt(out.length() - 1), null, true);
+    }
+
+    private void copyWord() {
+        final int start = pos;
+        while (pos < in.length() && isWordPart(in.charAt(pos))) {
+            pos++;
+        }
+        out.append(in, start, pos);
+        setLast(in.charAt(pos - 1), in.substring(start, pos), false);
+    }
+
+    private void setLast(final char c, final String word, final boolean regex) {
+        last = c;
+        lastWord = word;
+        lastRegex = regex;
+    }
+
+    private boolean startsWith(final String prefix) {
+        return in.startsWith(prefix, pos);
+    }
+
+    private static boolean isWordPart(final char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '$' || c == '_'
+                || c == '\\' || c > 127 && !Character.isWhitespace(c);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * The {@link FileCompressor}s found on a class path, by file type.
+ */
+class FileCompressors {
+
+    private final Map<String, FileCompressor> compressors = new TreeMap<String, FileCompressor>();
+
+    // longest first, so that a suffix like .min.js wins over .js
+    private final List<String> fileTypes = new ArrayList<String>();
+
+    private FileCompressors() {
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             when a compressor listed on the class path of the loader cannot be loaded
+     */
+    public static FileCompressors load(final ClassLoader loader) {
+        final FileCompressors registry = new FileCompressors();
+        try {
+            final Iterator<FileCompressor> found = ServiceLoader.load(FileCompressor.class, loader).iterator();
+            while (found.hasNext()) {
+                final FileCompressor compressor = found.next();
+                // the first one on the class path wins
+                if (!registry.compressors.containsKey(compressor.getFileType())) {
+                    registry.compressors.put(compressor.getFileType(), compressor);
+                    registry.fileTypes.add(compressor.getFileType());
+                }
+            }
+        } catch (final ServiceConfigurationError e) {
+            throw new IllegalArgumentException("Cannot load file compressors: " + e.getMessage(), e);
+        }
+
+        Collections.sort(registry.fileTypes, new Comparator<String>() {
+
+            public int compare(final String a, final String b) {
+                return b.length() - a.length();
+            }
+        });
+        return registry;
+    }
+
+    /**
+     * @return the file type of the file name, or null when no compressor handles it
+     */
+    public String getFileType(final String fileName) {
+        if (fileName == null || "".equals(fileName)) {
+            return null;
+        }
+        for (final String fileType : fileTypes) {
+            if (fileName.endsWith(fileType)) {
+                return fileType;
+            }
+        }
+        return null;
+    }
+
+    public FileCompressor get(final String fileType) {
+        return compressors.get(fileType);
+    }
+
+    public Collection<FileCompressor> getAll() {
+        return Collections.unmodifiableCollection(compressors.values());
+    }
+}
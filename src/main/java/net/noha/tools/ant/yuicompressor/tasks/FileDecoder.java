@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes whole files in bulk. Bytes are read through a fixed direct buffer and decoded straight into a char
+ * buffer sized from the file length, and both buffers are reused for the next file. Instances are not thread
+ * safe, use one per thread.
+ */
+class FileDecoder {
+
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    // larger char buffers are not kept around between files
+    private static final int MAX_RETAINED_CHARS = 1024 * 1024;
+
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+    private CharBuffer chars = CharBuffer.allocate(BYTE_BUFFER_SIZE);
+    private CharsetDecoder decoder;
+
+    /**
+     * @return the decoded content of the file, only valid until the next call
+     */
+    public CharBuffer decode(final File file, final Charset charset) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            CharBuffer out = prepare(charset, channel.size(), file);
+            ((Buffer) bytes).clear();
+
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(bytes) < 0;
+                ((Buffer) bytes).flip();
+                CoderResult result;
+                while ((result = decoder.decode(bytes, out, endOfInput)).isOverflow()) {
+                    out = grow(out);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                bytes.compact();
+            }
+            return finish(out);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Same as {@link #decode(File, Charset)}, for the content of a file already read into memory.
+     */
+    public CharBuffer decode(final byte[] content, final Charset charset) throws IOException {
+        CharBuffer out = prepare(charset, content.length, "input");
+        final ByteBuffer in = ByteBuffer.wrap(content);
+        CoderResult result;
+        while ((result = decoder.decode(in, out, true)).isOverflow()) {
+            out = grow(out);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        return finish(out);
+    }
+
+    /**
+     * @return the cleared char buffer to decode the given number of bytes into
+     */
+    private CharBuffer prepare(final Charset charset, final long size, final Object source) throws IOException {
+        if (decoder == null || !decoder.charset().equals(charset)) {
+            // same replacement behaviour as InputStreamReader
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        final long expectedChars = (long) Math.ceil(size * (double) decoder.averageCharsPerByte());
+        if (expectedChars >= Integer.MAX_VALUE) {
+            throw new IOException(source + " is too large to be compressed");
+        }
+
+        final CharBuffer out = chars.capacity() > expectedChars ? chars : CharBuffer.allocate((int) expectedChars
+                + 16);
+        // the Buffer casts keep the compiled calls compatible with Java 8 runtimes
+        ((Buffer) out).clear();
+        decoder.reset();
+        return out;
+    }
+
+    private CharBuffer finish(final CharBuffer decoded) {
+        CharBuffer out = decoded;
+        while (decoder.flush(out).isOverflow()) {
+            out = grow(out);
+        }
+
+        if (out.capacity() <= MAX_RETAINED_CHARS) {
+            chars = out;
+        }
+        ((Buffer) out).flip();
+        return out;
+    }
+
+    private static CharBuffer grow(final CharBuffer buffer) {
+        final CharBuffer grown = CharBuffer.allocate(buffer.capacity() * 2 + 16);
+        ((Buffer) buffer).flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Selects files by the include and exclude patterns of a fileset, without a DirectoryScanner, for the files found by
+ * a {@link FileTreeSnapshot} or a {@link DirectoryWatcher}. Nested selectors of the fileset are not applied. Paths
+ * are relative to the base directory of the fileset.
+ */
+class FileSelector implements Predicate<String> {
+
+    private final boolean caseSensitive;
+    private final List<TokenizedPattern> includes;
+    private final List<TokenizedPattern> excludes;
+    private final List<TokenizedPattern> excludedContents = new ArrayList<TokenizedPattern>();
+
+    public FileSelector(final FileSet fileset, final Project project) {
+        this.caseSensitive = fileset.isCaseSensitive();
+        this.includes = tokenize(getIncludePatterns(fileset, project));
+        this.excludes = tokenize(getExcludePatterns(fileset, project));
+        for (final TokenizedPattern exclude : excludes) {
+            if (exclude.endsWith(SelectorUtils.DEEP_TREE_MATCH)) {
+                excludedContents.add(exclude.withoutLastToken());
+            }
+        }
+    }
+
+    /**
+     * @return true when the include and exclude patterns select the file
+     */
+    public boolean apply(final String file) {
+        final TokenizedPath path = new TokenizedPath(file);
+        boolean included = false;
+        for (final TokenizedPattern include : includes) {
+            if (include.matchPath(path, caseSensitive)) {
+                included = true;
+                break;
+            }
+        }
+        if (!included) {
+            return false;
+        }
+
+        for (final TokenizedPattern exclude : excludes) {
+            if (exclude.matchPath(path, caseSensitive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return selects the directories whose whole content is excluded, they need not be walked
+     */
+    public Predicate<String> getExcludedDirectories() {
+        return new Predicate<String>() {
+
+            public boolean apply(final String dir) {
+                final TokenizedPath path = new TokenizedPath(dir);
+                for (final TokenizedPattern excluded : excludedContents) {
+                    if (excluded.matchPath(path, caseSensitive)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the normalized include patterns of the fileset
+     */
+    private static List<String> getIncludePatterns(final FileSet fileset, final Project project) {
+        String[] includes = fileset.mergeIncludes(project);
+        if (includes == null || includes.length == 0) {
+            includes = new String[] { "**" };
+        }
+        final List<String> patterns = new ArrayList<String>();
+        for (final String include : includes) {
+            patterns.add(normalizePattern(include));
+        }
+        return patterns;
+    }
+
+    /**
+     * @return the normalized exclude patterns of the fileset, default excludes included
+     */
+    private static List<String> getExcludePatterns(final FileSet fileset, final Project project) {
+        final List<String> excludes = new ArrayList<String>();
+        if (fileset.mergeExcludes(project) != null) {
+            excludes.addAll(Arrays.asList(fileset.mergeExcludes(project)));
+        }
+        if (fileset.getDefaultexcludes()) {
+            excludes.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+        }
+        final List<String> patterns = new ArrayList<String>();
+        for (final String exclude : excludes) {
+            patterns.add(normalizePattern(exclude));
+        }
+        return patterns;
+    }
+
+    private static List<TokenizedPattern> tokenize(final List<String> patterns) {
+        final List<TokenizedPattern> tokenized = new ArrayList<TokenizedPattern>();
+        for (final String pattern : patterns) {
+            tokenized.add(new TokenizedPattern(pattern));
+        }
+        return tokenized;
+    }
+
+    /**
+     * Same pattern normalization as the DirectoryScanner.
+     */
+    private static String normalizePattern(final String pattern) {
+        final String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        return normalized.endsWith(File.separator) ? normalized + "**" : normalized;
+    }
+}
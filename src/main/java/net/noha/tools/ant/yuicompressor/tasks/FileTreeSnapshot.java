@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Predicate;
+
+/**
+ * The regular files of a directory tree with their attributes, read while walking the tree so that every file is
+ * only stat'ed once. The directories near the root are walked in parallel, and files are selected while walking.
+ */
+class FileTreeSnapshot {
+
+    // directories up to this depth are walked by their own task, deeper ones by the task of their ancestor
+    private static final int SPLIT_DEPTH = 3;
+
+    private final Path root;
+    private final int rootLength;
+    private final Predicate<String> skippedDirs;
+    private final Predicate<String> selectedFiles;
+    private final Map<String, Attributes> files = new ConcurrentHashMap<String, Attributes>();
+    private final Set<String> selected = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private FileTreeSnapshot(final Path root, final Predicate<String> skippedDirs,
+            final Predicate<String> selectedFiles) {
+        this.root = root;
+        this.rootLength = root.toString().length() + (root.getParent() == null ? 0 : 1);
+        this.skippedDirs = skippedDirs;
+        this.selectedFiles = selectedFiles;
+    }
+
+    private void walk(final Path dir, final ExecutorService executor, final Queue<Future<?>> walks) {
+        walks.add(executor.submit(new Callable<Object>() {
+
+            public Object call() throws IOException {
+                Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                        new SimpleFileVisitor<Path>() {
+
+                            @Override
+                            public FileVisitResult preVisitDirectory(final Path subDir,
+                                    final BasicFileAttributes attributes) {
+                                if (subDir.equals(dir)) {
+                                    return FileVisitResult.CONTINUE;
+                                }
+                                final String name = getName(subDir);
+                                if (skippedDirs != null && skippedDirs.apply(name)) {
+                                    return FileVisitResult.SKIP_SUBTREE;
+                                }
+                                if (subDir.getNameCount() - root.getNameCount() <= SPLIT_DEPTH) {
+                                    walk(subDir, executor, walks);
+                                    return FileVisitResult.SKIP_SUBTREE;
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                                if (attributes.isRegularFile()) {
+                                    final String name = getName(file);
+                                    files.put(name, new Attributes(attributes));
+                                    if (selectedFiles == null || selectedFiles.apply(name)) {
+                                        selected.add(name);
+                                    }
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(final Path file, final IOException ioe) {
+                                // unreadable entries and symbolic link loops are left out, like the DirectoryScanner
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * @return the path relative to the root of a path found by walking the tree
+     */
+    private String getName(final Path path) {
+        return path.toString().substring(rootLength);
+    }
+
+    /**
+     * @return the paths of the selected files relative to the root, sorted
+     */
+    String[] getFiles() {
+        final String[] names = selected.toArray(new String[selected.size()]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * @return the attributes of the file, relative to the root, or null when it is not a regular file of this tree
+     */
+    Attributes get(final String name) {
+        return files.get(name);
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    /**
+     * Walks any number of trees on one pool of threads.
+     */
+    static final class Scanner implements Closeable {
+
+        private final ExecutorService executor;
+        // the running walks, a walk queues the walks of its subdirectories before it is done
+        private final Queue<Future<?>> walks = new ConcurrentLinkedQueue<Future<?>>();
+
+        Scanner(final int threads) {
+            this.executor = Executors.newFixedThreadPool(threads);
+        }
+
+        /**
+         * Starts walking the tree. A root that does not exist is an empty tree. The snapshot is complete once
+         * {@link #await} returns.
+         *
+         * @param skippedDirs
+         *            selects the directories, relative to root, whose files are left out, may be null
+         * @param selectedFiles
+         *            selects the files, relative to root, returned by {@link #getFiles}, may be null for all of them
+         */
+        FileTreeSnapshot scan(final File root, final Predicate<String> skippedDirs,
+                final Predicate<String> selectedFiles) {
+            final FileTreeSnapshot snapshot = new FileTreeSnapshot(root.toPath().toAbsolutePath().normalize(),
+                    skippedDirs, selectedFiles);
+            if (root.isDirectory()) {
+                snapshot.walk(snapshot.root, executor, walks);
+            }
+            return snapshot;
+        }
+
+        /**
+         * Waits for all walks started by {@link #scan}, including those they started themselves.
+         */
+        void await() throws IOException, InterruptedException {
+            Future<?> walk;
+            while ((walk = walks.poll()) != null) {
+                try {
+                    walk.get();
+                } catch (final ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException) {
+                        throw (IOException) ee.getCause();
+                    }
+                    throw new IOException(ee.getCause());
+                }
+            }
+        }
+
+        /**
+         * Stops the walks that are still running.
+         */
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The attributes kept for every file, a small part of those read.
+     */
+    static final class Attributes {
+
+        private final long size;
+        private final long lastModified;
+
+        Attributes(final BasicFileAttributes attributes) {
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
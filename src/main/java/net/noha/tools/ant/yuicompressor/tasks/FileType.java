@@ -6,6 +6,8 @@ public class FileType {
     public static final String XML_FILE = ".xml";
     public static final String HTML_FILE = ".html";
     public static final String XHTML_FILE = ".xhtml";
+    public static final String JSON_FILE = ".json";
+    public static final String SVG_FILE = ".svg";
 
     private final String suffix;
 
@@ -17,13 +19,14 @@ public class FileType {
         return this.suffix;
     }
 
+    /**
+     * @return the file type of the file name among the compressors on the class path of the task, or null
+     */
     public static String getFileType(String fileName) {
-        if (fileName == null || "".equals(fileName)) {
-            return null;
-        }
+        return DefaultCompressors.INSTANCE.getFileType(fileName);
+    }
 
-        return (fileName.endsWith(JS_FILE)) ? JS_FILE : (fileName.endsWith(CSS_FILE)) ? CSS_FILE : (fileName
-                .endsWith(XML_FILE)) ? XML_FILE : (fileName.endsWith(HTML_FILE)) ? HTML_FILE : (fileName
-                .endsWith(XHTML_FILE)) ? XHTML_FILE : null;
+    private static class DefaultCompressors {
+        static final FileCompressors INSTANCE = FileCompressors.load(FileType.class.getClassLoader());
     }
 }
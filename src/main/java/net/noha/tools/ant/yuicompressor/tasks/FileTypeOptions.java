@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DynamicAttribute;
+
+/**
+ * Nested filetype element of the task, configuring the compressor of one file type. Any attribute other than
+ * extension, suffix, enabled and archiveMethod is handed to the compressor as an option, overriding the task
+ * attribute of the same name.
+ */
+public class FileTypeOptions implements DynamicAttribute {
+
+    private String extension;
+    private String suffix;
+    private boolean enabled = true;
+    private String archiveMethod;
+
+    // compressor options, names are case insensitive like Ant attributes
+    private final Map<String, String> options = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+    public String getArchiveMethod() {
+        return archiveMethod;
+    }
+
+    /**
+     * @param archiveMethod
+     *            deflated or stored, for the archive entries of this type when writing to an archive
+     */
+    public void setArchiveMethod(final String archiveMethod) {
+        this.archiveMethod = archiveMethod;
+    }
+
+    public String getExtension() throws BuildException {
+        if (extension == null) {
+            throw new BuildException("filetype requires an extension attribute");
+        }
+        return extension;
+    }
+
+    /**
+     * @param extension
+     *            the file type configured, like .json
+     */
+    public void setExtension(final String extension) {
+        this.extension = extension.startsWith(".") ? extension : "." + extension;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * @param suffix
+     *            replaces the extension in the names of the compressed files, like .min.json
+     */
+    public void setSuffix(final String suffix) {
+        this.suffix = suffix;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled
+     *            false to leave files of this type out
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public void setDynamicAttribute(final String name, final String value) {
+        options.put(name, value);
+    }
+}
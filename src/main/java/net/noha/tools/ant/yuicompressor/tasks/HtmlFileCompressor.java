@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.mozilla.javascript.EvaluatorException;
+
+import com.google.common.io.CharStreams;
+import com.googlecode.htmlcompressor.compressor.Compressor;
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+
+/**
+ * Compresses HTML with the htmlcompressor defaults. With the compressInline option, inline scripts and styles are
+ * compressed too, by the JavaScript and CSS compressors of the engine.
+ */
+public class HtmlFileCompressor implements FileCompressor {
+
+    public String getFileType() {
+        return FileType.HTML_FILE;
+    }
+
+    public String getLabel() {
+        return "HTML";
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public void compress(final Reader in, final Writer out, final CompressionContext context) throws IOException {
+        final HtmlCompressor compressor = new HtmlCompressor();
+        if (context.getBooleanOption("compressInline", false)) {
+            compressor.setCompressJavaScript(true);
+            compressor.setJavaScriptCompressor(new EmbeddedCompressor(context, FileType.JS_FILE, "script"));
+            compressor.setCompressCss(true);
+            compressor.setCssCompressor(new EmbeddedCompressor(context, FileType.CSS_FILE, "style"));
+        }
+        out.write(compressor.compress(CharStreams.toString(in)));
+    }
+
+    /**
+     * Compresses the inline scripts or styles of a page, keeping those that cannot be compressed as they are.
+     */
+    private static class EmbeddedCompressor implements Compressor {
+
+        private final CompressionContext context;
+        private final String fileType;
+        private final String label;
+
+        EmbeddedCompressor(final CompressionContext context, final String fileType, final String label) {
+            this.context = context;
+            this.fileType = fileType;
+            this.label = label;
+        }
+
+        public String compress(final String source) {
+            try {
+                return context.compressEmbedded(source, fileType);
+            } catch (final IOException ioe) {
+                context.log("Cannot compress an inline " + label + ": " + ioe.getMessage(),
+                        CompressionContext.MSG_WARN);
+            } catch (final EvaluatorException e) {
+                context.log("Cannot compress an inline " + label + ": " + e.getMessage(),
+                        CompressionContext.MSG_WARN);
+            }
+            return source;
+        }
+    }
+}
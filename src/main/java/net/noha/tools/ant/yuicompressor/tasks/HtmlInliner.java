@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.io.Files;
+
+/**
+ * Replaces the references of HTML pages to small local scripts and style sheets with their compressed content, saving
+ * a request for each of them. Scripts loaded async or deferred, alternate style sheets, style sheets with imports and
+ * content that would end its own element are left as references, and so is markup inside comments, scripts, styles
+ * and text areas, like a script writing a script element. Relative URLs of inlined style sheets are rewritten to be
+ * relative to the page.
+ *
+ * Thread safe, the inlined content is compressed by the engine and cached there.
+ */
+final class HtmlInliner {
+
+    // comments and elements whose content is not markup, matched whole so that references inside them are skipped,
+    // with the attributes of scripts in group 1, their content in group 2 and the attributes of links in group 4
+    private static final Pattern ELEMENT = Pattern.compile("<!--.*?-->|<script\\b([^>]*)>(.*?)</script\\s*>"
+            + "|<(style|textarea)\\b[^>]*>.*?</\\3\\s*>|<link\\b([^>]*?)/?>", Pattern.CASE_INSENSITIVE
+                    | Pattern.DOTALL);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "([^\\s=/>]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?");
+    private static final Pattern URL = Pattern.compile("url\\((['\"]?)([^'\")]*)\\1\\)");
+    private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    // attributes that do not change how an inline element behaves
+    private static final Set<String> SCRIPT_ATTRIBUTES = new HashSet<String>(Arrays.asList("src", "type", "charset",
+            "language"));
+    private static final Set<String> LINK_ATTRIBUTES = new HashSet<String>(Arrays.asList("rel", "href", "type",
+            "media"));
+    private static final Set<String> SCRIPT_TYPES = new HashSet<String>(Arrays.asList("", "text/javascript",
+            "application/javascript"));
+
+    private final File rootDir;
+    private final Charset charset;
+    private final long maxSize;
+    private final CompressionEngine engine;
+    private final Map<String, String> jsOptions;
+    private final Map<String, String> cssOptions;
+    private final String jsSuffix;
+    private final String cssSuffix;
+
+    /**
+     * @param rootDir
+     *            directory that root relative references, like /js/app.js, are resolved against
+     * @param maxSize
+     *            maximum size in bytes of the compressed content of an inlined file
+     * @param jsSuffix
+     *            suffix of the compressed scripts, that pages may refer to instead of .js
+     * @param cssSuffix
+     *            suffix of the compressed style sheets, that pages may refer to instead of .css
+     */
+    HtmlInliner(final File rootDir, final Charset charset, final long maxSize, final CompressionEngine engine,
+            final Map<String, String> jsOptions, final Map<String, String> cssOptions, final String jsSuffix,
+            final String cssSuffix) {
+        this.rootDir = rootDir.getAbsoluteFile();
+        this.charset = charset;
+        this.maxSize = maxSize;
+        this.engine = engine;
+        this.jsOptions = jsOptions;
+        this.cssOptions = cssOptions;
+        this.jsSuffix = jsSuffix;
+        this.cssSuffix = cssSuffix;
+    }
+
+    /**
+     * @return the files the page refers to that may be inlined, whatever their size
+     */
+    List<File> getInlinedFiles(final String html, final File page) {
+        final List<File> files = new ArrayList<File>();
+        final Matcher elements = ELEMENT.matcher(html);
+        while (elements.find()) {
+            final File file = getReference(elements, page);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the page with the references to small enough files replaced by their compressed content
+     */
+    String inline(final String html, final File page, final LogBuffer log) throws IOException {
+        final StringBuffer result = new StringBuffer(html.length());
+        final Matcher elements = ELEMENT.matcher(html);
+        while (elements.find()) {
+            final File file = getReference(elements, page);
+            String inlined = null;
+            if (file != null && elements.group(1) != null) {
+                inlined = inlineScript(file, page, log);
+            } else if (file != null) {
+                inlined = inlineStyleSheet(file, getAttributes(elements.group(4)).get("media"), page, log);
+            }
+            elements.appendReplacement(result, Matcher.quoteReplacement(inlined != null ? inlined : elements
+                    .group()));
+        }
+        elements.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * @return the file an empty script element or a link refers to, null for other elements and comments
+     */
+    private File getReference(final Matcher element, final File page) {
+        if (element.group(1) != null) {
+            return element.group(2).trim().isEmpty() ? getScript(element.group(1), page) : null;
+        }
+        return element.group(4) != null ? getStyleSheet(element.group(4), page) : null;
+    }
+
+    private String inlineScript(final File file, final File page, final LogBuffer log) throws IOException {
+        final String compressed = compress(file, FileType.JS_FILE, jsOptions);
+        if (!fits(compressed, file, page, log) || compressed.toLowerCase(Locale.ROOT).contains("</script")) {
+            return null;
+        }
+        logInlined(compressed, file, page, log);
+        return "<script>" + compressed + "</script>";
+    }
+
+    private String inlineStyleSheet(final File file, final String media, final File page, final LogBuffer log)
+            throws IOException {
+        final String compressed = compress(file, FileType.CSS_FILE, cssOptions);
+        if (!fits(compressed, file, page, log) || compressed.toLowerCase(Locale.ROOT).contains("</style")
+                || compressed.contains("@import")) {
+            return null;
+        }
+        logInlined(compressed, file, page, log);
+        final String css = rewriteUrls(compressed, file, page);
+        return (media == null || media.equalsIgnoreCase("all") ? "<style>" : "<style media=\"" + media + "\">") + css
+                + "</style>";
+    }
+
+    private String compress(final File file, final String fileType, final Map<String, String> options)
+            throws IOException {
+        return engine.compress(Files.asCharSource(file, charset).read(), fileType, options);
+    }
+
+    private boolean fits(final String compressed, final File file, final File page, final LogBuffer log) {
+        final int size = compressed.getBytes(charset).length;
+        if (size > maxSize) {
+            log.log("Not inlining " + file.getName() + " into " + page.getName() + ", it is " + size + " bytes",
+                    CompressionContext.MSG_VERBOSE);
+            return false;
+        }
+        return true;
+    }
+
+    private void logInlined(final String compressed, final File file, final File page, final LogBuffer log) {
+        log.log("Inlined " + file.getName() + " into " + page.getName() + " [" + compressed.getBytes(charset).length
+                + "]", CompressionContext.MSG_VERBOSE);
+    }
+
+    private File getScript(final String attributes, final File page) {
+        final Map<String, String> values = getAttributes(attributes);
+        final String type = values.get("type");
+        if (!SCRIPT_ATTRIBUTES.containsAll(values.keySet()) || !values.containsKey("src") || type != null
+                && !SCRIPT_TYPES.contains(type.trim().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return resolve(values.get("src"), page, FileType.JS_FILE, jsSuffix);
+    }
+
+    private File getStyleSheet(final String attributes, final File page) {
+        final Map<String, String> values = getAttributes(attributes);
+        final String rel = values.get("rel");
+        final String type = values.get("type");
+        if (!LINK_ATTRIBUTES.containsAll(values.keySet()) || rel == null || !rel.trim().equalsIgnoreCase(
+                "stylesheet") || type != null && !type.trim().equalsIgnoreCase("text/css")) {
+            return null;
+        }
+        return resolve(values.get("href"), page, FileType.CSS_FILE, cssSuffix);
+    }
+
+    /**
+     * @return attribute values by lower case name, attributes without a value have an empty one
+     */
+    private static Map<String, String> getAttributes(final String attributes) {
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        final Matcher matcher = ATTRIBUTE.matcher(attributes);
+        while (matcher.find()) {
+            String value = matcher.group(2);
+            if (value == null) {
+                value = matcher.group(3);
+            }
+            if (value == null) {
+                value = matcher.group(4);
+            }
+            values.put(matcher.group(1).toLowerCase(Locale.ROOT), value == null ? "" : value);
+        }
+        return values;
+    }
+
+    /**
+     * @return the local file of the given type the reference points to, or null when there is none in rootDir
+     */
+    private File resolve(final String reference, final File page, final String fileType, final String suffix) {
+        if (reference == null || reference.startsWith("//") || SCHEME.matcher(reference).find()) {
+            return null;
+        }
+        String path = stripQuery(reference.trim());
+        if (path.isEmpty()) {
+            return null;
+        }
+
+        // pages refer to the compressed outputs, which may have another suffix than their sources
+        if (!path.endsWith(fileType) && path.endsWith(suffix)) {
+            path = path.substring(0, path.length() - suffix.length()) + fileType;
+        }
+        if (!path.endsWith(fileType)) {
+            return null;
+        }
+
+        final File base = path.startsWith("/") ? rootDir : page.getAbsoluteFile().getParentFile();
+        final Path file = base.toPath().resolve(path.replaceFirst("^/+", "")).normalize();
+        return file.startsWith(rootDir.toPath().normalize()) && file.toFile().isFile() ? file.toFile() : null;
+    }
+
+    /**
+     * Makes the relative URLs of an inlined style sheet relative to the page.
+     */
+    private static String rewriteUrls(final String css, final File styleSheet, final File page) {
+        final Path pageDir = page.getAbsoluteFile().getParentFile().toPath().normalize();
+        final Path styleSheetDir = styleSheet.getAbsoluteFile().getParentFile().toPath().normalize();
+        if (pageDir.equals(styleSheetDir)) {
+            return css;
+        }
+
+        final StringBuffer result = new StringBuffer(css.length());
+        final Matcher matcher = URL.matcher(css);
+        while (matcher.find()) {
+            final String url = matcher.group(2).trim();
+            String replacement = matcher.group();
+            if (!url.isEmpty() && !url.startsWith("/") && !url.startsWith("#") && !SCHEME.matcher(url).find()) {
+                final String path = stripQuery(url);
+                final String relative = pageDir.relativize(styleSheetDir.resolve(path).normalize()).toString()
+                        .replace(File.separatorChar, '/');
+                replacement = "url(" + matcher.group(1) + relative + url.substring(path.length()) + matcher.group(1)
+                        + ")";
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String stripQuery(final String url) {
+        int end = url.length();
+        final int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        final int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+}
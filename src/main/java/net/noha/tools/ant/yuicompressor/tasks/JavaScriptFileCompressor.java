@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import com.google.common.io.CharStreams;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Compresses JavaScript with the YUI Compressor. Honours the lineBreakPosition, munge, warn, preserveAllSemiColons
+ * and optimize options. At level fast, a single pass minifier is used instead, and at level max munging is always
+ * on and redundant semicolons are always removed.
+ */
+public class JavaScriptFileCompressor implements FileCompressor {
+
+    public String getFileType() {
+        return FileType.JS_FILE;
+    }
+
+    public String getLabel() {
+        return "JavaScript";
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public void compress(final Reader in, final Writer out, final CompressionContext context) throws IOException,
+            EvaluatorException {
+        final CompressionLevel level = context.getLevel();
+        if (level == CompressionLevel.FAST) {
+            out.write(FastJavaScriptMinifier.minify(CharStreams.toString(in)));
+            return;
+        }
+
+        final boolean max = level == CompressionLevel.MAX;
+        final JavaScriptCompressor compressor = new JavaScriptCompressor(in, createErrorReporter(context));
+        compressor.compress(out, context.getIntOption("lineBreakPosition", -1), max || context.getBooleanOption(
+                "munge", false), context.getBooleanOption("warn", true), !max && context.getBooleanOption(
+                        "preserveAllSemiColons", true), !max && !context.getBooleanOption("optimize", true));
+    }
+
+    private static ErrorReporter createErrorReporter(final CompressionContext context) {
+        return new ErrorReporter() {
+
+            public void error(final String message, final String sourceName, final int line, final String lineSource,
+                    final int lineOffset) {
+                context.log(getMessage(sourceName, message, line, lineOffset), CompressionContext.MSG_ERR);
+            }
+
+            private String getMessage(final String source, final String message, final int line, final int lineOffset) {
+                String logMessage;
+                if (line < 0) {
+                    logMessage = source != null ? new StringBuilder().append(source).append(":").toString()
+                            : new StringBuilder().append("").append(message).toString();
+                } else {
+                    logMessage = source != null ? new StringBuilder().append(source).append(":").toString()
+                            : new StringBuilder().append("").append(line).append(":").append(lineOffset).append(":")
+                                    .append(message).toString();
+                }
+                return logMessage;
+            }
+
+            public EvaluatorException runtimeError(final String message, final String sourceName, final int line,
+                    final String lineSource, final int lineOffset) {
+                context.log(getMessage(sourceName, message, line, lineOffset), CompressionContext.MSG_ERR);
+                return new EvaluatorException(message);
+            }
+
+            public void warning(final String message, final String sourceName, final int line, final String lineSource,
+                    final int lineOffset) {
+                context.log(getMessage(sourceName, message, line, lineOffset), CompressionContext.MSG_WARN);
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+
+/**
+ * Runs the per-file jobs of a task, either inline or on a bounded pool of worker threads. The log of each job is
+ * written out in submission order, and the first failing job fails the build. A job may return a {@link Future} for
+ * work it left to other threads, such as writing its output, and is only finished when that future is.
+ */
+class JobRunner {
+
+    private final Task task;
+    private final ExecutorService executor;
+
+    private final Deque<PendingJob> pending = new ArrayDeque<PendingJob>();
+
+    public JobRunner(final Task task, final int threads) {
+        this.task = task;
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    /**
+     * Runs the job right away when there is no pool, otherwise queues it. The job logs to the given buffer.
+     */
+    public void submit(final String name, final LogBuffer log, final Callable<Object> job) throws BuildException {
+        if (executor == null) {
+            final FutureTask<Object> result = new FutureTask<Object>(job);
+            result.run();
+            pending.add(new PendingJob(name, log, result));
+            awaitFinished();
+        } else {
+            pending.add(new PendingJob(name, log, executor.submit(job)));
+        }
+    }
+
+    /**
+     * Waits for all queued jobs in submission order.
+     */
+    public void awaitAll() throws BuildException {
+        while (!pending.isEmpty()) {
+            pending.remove().await(task);
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes out the logs of the jobs already finished, in submission order, without waiting for the others.
+     */
+    private void awaitFinished() throws BuildException {
+        while (!pending.isEmpty() && pending.peek().isFinished()) {
+            pending.remove().await(task);
+        }
+    }
+
+    private static class PendingJob {
+
+        private final String name;
+        private final LogBuffer log;
+        private final Future<?> result;
+
+        PendingJob(final String name, final LogBuffer log, final Future<?> result) {
+            this.name = name;
+            this.log = log;
+            this.result = result;
+        }
+
+        boolean isFinished() {
+            if (!result.isDone()) {
+                return false;
+            }
+            try {
+                final Object value = result.get();
+                return !(value instanceof Future) || ((Future<?>) value).isDone();
+            } catch (final Exception e) {
+                // failed, which await reports
+                return true;
+            }
+        }
+
+        void await(final Task task) throws BuildException {
+            try {
+                final Object value = result.get();
+                if (value instanceof Future) {
+                    ((Future<?>) value).get();
+                }
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new BuildException("Interrupted while compressing " + name, ie);
+            } catch (final ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (cause instanceof BuildException) {
+                    throw (BuildException) cause;
+                }
+                throw new BuildException("Failed to compress " + name + ": " + cause.getMessage(), cause);
+            } finally {
+                log.flushTo(task);
+            }
+        }
+    }
+}
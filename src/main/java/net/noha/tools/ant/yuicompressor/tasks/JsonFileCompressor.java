@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Removes the whitespace outside of strings from JSON in a single pass with constant memory. The input is not
+ * validated, invalid JSON is minified as far as it goes.
+ */
+public class JsonFileCompressor implements FileCompressor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public String getFileType() {
+        return FileType.JSON_FILE;
+    }
+
+    public String getLabel() {
+        return "JSON";
+    }
+
+    public boolean isStreaming() {
+        return true;
+    }
+
+    public void compress(final Reader in, final Writer out, final CompressionContext context) throws IOException {
+        final char[] input = new char[BUFFER_SIZE];
+        final char[] output = new char[BUFFER_SIZE];
+        int written = 0;
+        boolean inString = false;
+        boolean escaped = false;
+
+        int read;
+        while ((read = in.read(input)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                final char c = input[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    continue;
+                } else if (c == '"') {
+                    inString = true;
+                }
+
+                output[written++] = c;
+                if (written == output.length) {
+                    out.write(output, 0, written);
+                    written = 0;
+                }
+            }
+        }
+        out.write(output, 0, written);
+        out.flush();
+    }
+}
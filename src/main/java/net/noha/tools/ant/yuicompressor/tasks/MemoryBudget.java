@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.Locale;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Bounds the heap estimated to be held by the files being compressed at the same time. Files are admitted as long
+ * as the budget allows, one file bigger than the whole budget is admitted when nothing else runs.
+ */
+class MemoryBudget {
+
+    private final long limit;
+    private long used = 0L;
+
+    public MemoryBudget(final long limit) {
+        this.limit = limit;
+    }
+
+    public synchronized void acquire(final long bytes) throws InterruptedException {
+        final long admitted = Math.min(bytes, limit);
+        while (used + admitted > limit) {
+            wait();
+        }
+        used += admitted;
+    }
+
+    public synchronized void release(final long bytes) {
+        used -= Math.min(bytes, limit);
+        notifyAll();
+    }
+
+    /**
+     * @return the number of bytes of a size like 512k, 64m or 2g
+     */
+    static long parseSize(final String size) throws BuildException {
+        final String value = size.trim().toLowerCase(Locale.ROOT);
+        long unit = 1L;
+        int end = value.length();
+        if (value.endsWith("k")) {
+            unit = 1024L;
+        } else if (value.endsWith("m")) {
+            unit = 1024L * 1024L;
+        } else if (value.endsWith("g")) {
+            unit = 1024L * 1024L * 1024L;
+        }
+        if (unit > 1L) {
+            end--;
+        }
+        try {
+            return Long.parseLong(value.substring(0, end).trim()) * unit;
+        } catch (final NumberFormatException e) {
+            throw new BuildException("Invalid size: " + size);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+
+/**
+ * Merges the shard files written by sharded runs of {@link YuiCompressorTask} into one statistics summary, and
+ * their asset manifest entries into one asset manifest.
+ */
+public class MergeShardsTask extends Task {
+
+    protected File assetManifest;
+    protected int shardCount = 0;
+
+    // shard files, usually a fileset
+    private final List<ResourceCollection> shardFiles = new ArrayList<ResourceCollection>();
+
+    public void add(final ResourceCollection shardFile) {
+        shardFiles.add(shardFile);
+    }
+
+    @Override
+    public void execute() {
+        final CompressionStatistics stats = new CompressionStatistics();
+        final AssetManifest assets = assetManifest != null ? new AssetManifest(assetManifest) : null;
+        final Set<Integer> shards = new TreeSet<Integer>();
+        long slowestNanos = 0L;
+
+        for (final ResourceCollection collection : shardFiles) {
+            for (final Resource resource : collection) {
+                final Properties properties = load(resource);
+                final int index = Integer.parseInt(properties.getProperty("shard.index", "-1"));
+                final int count = Integer.parseInt(properties.getProperty("shard.count", "0"));
+                if (index < 0 || count < 1) {
+                    throw new BuildException(resource + " is not a shard file");
+                }
+                if (shardCount > 0 && count != shardCount) {
+                    throw new BuildException(resource + " is shard " + index + " of " + count + ", not of "
+                            + shardCount);
+                }
+                if (!shards.add(index)) {
+                    throw new BuildException("Shard " + index + " merged twice, " + resource + " is a duplicate");
+                }
+
+                stats.merge(properties);
+                slowestNanos = Math.max(slowestNanos, Long.parseLong(properties.getProperty("shard.nanos", "0")));
+                if (assets != null) {
+                    for (final String name : properties.stringPropertyNames()) {
+                        if (name.startsWith("asset.")) {
+                            assets.put(name.substring("asset.".length()), properties.getProperty(name));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (shardCount > 0 && shards.size() != shardCount) {
+            throw new BuildException("Merged " + shards.size() + " of " + shardCount + " shards " + shards);
+        }
+
+        if (assets != null) {
+            try {
+                assets.store();
+            } catch (final IOException ioe) {
+                throw new BuildException("I/O Error when writing asset manifest " + assetManifest, ioe);
+            }
+        }
+
+        log("Merged " + shards.size() + " shards, the slowest took " + slowestNanos / 1000000L + "ms");
+        log(stats.getXmlStats());
+        log(stats.getHtmlStats());
+        log(stats.getXhtmlStats());
+        log(stats.getJsStats());
+        log(stats.getCssStats());
+        for (final FileCompressor compressor : FileCompressors.load(MergeShardsTask.class.getClassLoader())
+                .getAll()) {
+            if (!YuiCompressorTask.isDefaultFileType(compressor.getFileType())) {
+                log(stats.getStats(compressor.getFileType(), compressor.getLabel()));
+            }
+        }
+        if (stats.hasCopies()) {
+            log(stats.getCopyStats(slowestNanos));
+        }
+        if (stats.hasCacheLookups()) {
+            log(stats.getCacheStats());
+        }
+        log(stats.getDeduplicationStats());
+        log(stats.getTotalStats());
+    }
+
+    private static Properties load(final Resource resource) throws BuildException {
+        final Properties properties = new Properties();
+        try {
+            final InputStream in = resource.getInputStream();
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading shard file " + resource, ioe);
+        }
+        return properties;
+    }
+
+    public void setAssetManifest(final File assetManifest) {
+        this.assetManifest = assetManifest;
+    }
+
+    public void setShardCount(final int shardCount) {
+        this.shardCount = shardCount;
+    }
+}
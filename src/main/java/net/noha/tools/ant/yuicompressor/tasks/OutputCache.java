@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * Compressed outputs stored under a hash of their input and compression options, in a directory that may be shared
+ * by several workspaces and build agents. Entries are written to a temporary file and renamed into place, so
+ * concurrent writers and readers never see a partial entry. Using an entry refreshes its timestamp, and eviction
+ * removes the least recently used entries first.
+ */
+class OutputCache {
+
+    // temporary files left behind by writers that died are removed after an hour
+    private static final long STALE_TEMP_MILLIS = 60L * 60L * 1000L;
+
+    private final File dir;
+    private final long maxSize;
+
+    public OutputCache(final File dir, final long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Copies the entry of key to target.
+     *
+     * @return false when there is no such entry
+     */
+    public boolean copy(final String key, final File target) throws IOException {
+        final File entry = getEntry(key);
+        try {
+            java.nio.file.Files.copy(entry.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final NoSuchFileException e) {
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores a copy of content as the entry of key, unless another writer already did.
+     */
+    public void put(final String key, final ByteSource content) throws IOException {
+        final File entry = getEntry(key);
+        if (entry.isFile()) {
+            entry.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        entry.getParentFile().mkdirs();
+        final File temp = OutputFiles.createTempFile(entry);
+        try {
+            content.copyTo(Files.asByteSink(temp));
+            OutputFiles.replace(temp, entry);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Same as {@link #copy(String, File)}, an entry that cannot be read is logged and taken as missing, as an
+     * unavailable cache only costs time.
+     */
+    public boolean copy(final String key, final File target, final LogBuffer log) {
+        try {
+            return copy(key, target);
+        } catch (final IOException ioe) {
+            log.log("Cannot read cache entry " + key + " from " + dir + ": " + ioe.getMessage(),
+                    CompressionContext.MSG_WARN);
+            return false;
+        }
+    }
+
+    /**
+     * Same as {@link #put(String, ByteSource)}, an entry that cannot be written is logged and left out.
+     */
+    public void put(final String key, final ByteSource content, final LogBuffer log) {
+        try {
+            put(key, content);
+        } catch (final IOException ioe) {
+            log.log("Cannot write cache entry " + key + " to " + dir + ": " + ioe.getMessage(),
+                    CompressionContext.MSG_WARN);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits its maximum size.
+     *
+     * @return the number of entries removed
+     */
+    public int evict() {
+        final File[] buckets = dir.listFiles();
+        if (buckets == null) {
+            return 0;
+        }
+
+        // timestamps are read once, other builds may touch entries while they are sorted
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        final List<File> entries = new ArrayList<File>();
+        final long now = System.currentTimeMillis();
+        long size = 0L;
+        for (final File bucket : buckets) {
+            final File[] files = bucket.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (final File file : files) {
+                final long modified = file.lastModified();
+                if (file.getName().startsWith(".")) {
+                    if (modified < now - STALE_TEMP_MILLIS) {
+                        file.delete();
+                    }
+                    continue;
+                }
+                lastUsed.put(file, modified);
+                entries.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= maxSize) {
+            return 0;
+        }
+
+        Collections.sort(entries, new Comparator<File>() {
+
+            public int compare(final File a, final File b) {
+                return lastUsed.get(a).compareTo(lastUsed.get(b));
+            }
+        });
+        int removed = 0;
+        for (final File entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            final long length = entry.length();
+            if (entry.delete()) {
+                size -= length;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private File getEntry(final String key) {
+        return new File(new File(dir, key.substring(0, 2)), key);
+    }
+}
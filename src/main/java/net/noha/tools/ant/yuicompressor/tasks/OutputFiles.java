@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * Writes outputs through a temporary file that is renamed over the target, so that readers never see a partially
+ * written output. Outputs whose content did not change are left untouched, keeping their timestamps. As outputs are
+ * always replaced rather than written to, they can safely be hard links to each other.
+ */
+final class OutputFiles {
+
+    private OutputFiles() {
+    }
+
+    /**
+     * @return false when the file already had the given content and was not touched
+     */
+    static boolean writeIfChanged(final File file, final byte[] content) throws IOException {
+        if (file.isFile() && file.length() == content.length
+                && Files.asByteSource(file).contentEquals(ByteSource.wrap(content))) {
+            return false;
+        }
+        writeAtomically(file, content);
+        return true;
+    }
+
+    static void writeAtomically(final File file, final byte[] content) throws IOException {
+        final File temp = createTempFile(file);
+        try {
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            replace(temp, file);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file over target, unless target already has the same content.
+     *
+     * @return false when target was not touched
+     */
+    static boolean replaceIfChanged(final File temp, final File target) throws IOException {
+        if (target.isFile() && target.length() == temp.length()
+                && Files.asByteSource(target).contentEquals(Files.asByteSource(temp))) {
+            temp.delete();
+            return false;
+        }
+        replace(temp, target);
+        return true;
+    }
+
+    /**
+     * @return a new hidden file next to target, to be renamed over it with {@link #replace}
+     */
+    static File createTempFile(final File target) throws IOException {
+        return File.createTempFile("." + target.getName() + ".", ".tmp", target.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Gives target the content of source with {@link #linkOrCopy} unless it already has it.
+     *
+     * @return false when target already had the content of source and was not touched
+     */
+    static boolean linkIfChanged(final File source, final File target, final boolean link) throws IOException {
+        if (target.isFile() && target.length() == source.length()
+                && Files.asByteSource(target).contentEquals(Files.asByteSource(source))) {
+            return false;
+        }
+        linkOrCopy(source, target, link);
+        return true;
+    }
+
+    /**
+     * Replaces target with a hard link to source, or with a copy keeping the timestamps of source when links are not
+     * wanted or not supported.
+     */
+    static void linkOrCopy(final File source, final File target, final boolean link) throws IOException {
+        final File temp = createTempFile(target);
+        try {
+            temp.delete();
+            if (!link || !createLink(temp, source)) {
+                // lets the JDK use the fastest copy the platform offers
+                java.nio.file.Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            replace(temp, target);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static boolean createLink(final File link, final File existing) {
+        try {
+            java.nio.file.Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        } catch (final IOException e) {
+            return false;
+        } catch (final UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Renames source over target, atomically where the file system supports it.
+     */
+    static void replace(final File source, final File target) throws IOException {
+        try {
+            java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,527 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.util.FileUtils;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+
+/**
+ * Puts compressed outputs in place: in the output directory or as entries of an archive, under a fingerprinted name
+ * when there is an asset manifest, and with their precompressed .gz and .deflate sidecars. Outputs and sidecars
+ * already holding the same content are left untouched, so that their timestamps only change with their content.
+ */
+class OutputPublisher {
+
+    static final String GZIP_SUFFIX = ".gz";
+    static final String DEFLATE_SUFFIX = ".deflate";
+    private static final int SIDECAR_BUFFER_SIZE = 8192;
+
+    private final File outputBase;
+    private final ArchiveOutput archive;
+    private final String archivePrefix;
+    private final AssetManifest assets;
+    private final int fingerprintLength;
+    private final boolean hardLinks;
+    private final boolean gzip;
+    private final boolean deflate;
+    private final int gzipLevel;
+    private final long gzipMinSize;
+
+    /**
+     * @param outputBase
+     *            the directory the outputs are written to, or the archive file when archive is set
+     * @param archive
+     *            the archive the outputs below outputBase are written to, or null
+     * @param assets
+     *            the logical to fingerprinted names of the outputs, or null when not fingerprinting
+     */
+    OutputPublisher(final File outputBase, final ArchiveOutput archive, final String archivePrefix,
+            final AssetManifest assets, final int fingerprintLength, final boolean hardLinks, final boolean gzip,
+            final boolean deflate, final int gzipLevel, final long gzipMinSize) {
+        this.outputBase = outputBase;
+        this.archive = archive;
+        this.archivePrefix = archivePrefix;
+        this.assets = assets;
+        this.fingerprintLength = fingerprintLength;
+        this.hardLinks = hardLinks;
+        this.gzip = gzip;
+        this.deflate = deflate;
+        this.gzipLevel = gzipLevel;
+        this.gzipMinSize = gzipMinSize;
+    }
+
+    /**
+     * Writes the compressed content to outFile, or to its fingerprinted name when fingerprinting, followed by its
+     * sidecars.
+     *
+     * @return false when the output was already up to date, the file written is found by {@link #resolve}
+     */
+    boolean write(final File outFile, final int archiveMethod, final byte[] result) throws IOException {
+        File target = outFile;
+        if (isFingerprinted(outFile)) {
+            final String hash = Hashing.sha256().hashBytes(result).toString().substring(0, fingerprintLength);
+            target = getFingerprintedFile(outFile, hash);
+            assets.put(getLogicalName(outFile), getLogicalName(target));
+        }
+
+        if (isArchived(target)) {
+            return writeEntry(target, archiveMethod, ByteSource.wrap(result));
+        }
+        target.getParentFile().mkdirs();
+        final boolean changed = OutputFiles.writeIfChanged(target, result);
+        return writeSidecars(target, ByteSource.wrap(result)) | changed;
+    }
+
+    /**
+     * Same as {@link #write(File, int, byte[])}, for compressed content already written to a temporary file.
+     */
+    boolean publish(final File outFile, final int archiveMethod, final File temp) throws IOException {
+        File target = outFile;
+        if (isFingerprinted(outFile)) {
+            final String hash = Files.asByteSource(temp).hash(Hashing.sha256()).toString();
+            target = getFingerprintedFile(outFile, hash.substring(0, fingerprintLength));
+            assets.put(getLogicalName(outFile), getLogicalName(target));
+        }
+
+        if (isArchived(target)) {
+            return writeEntry(target, archiveMethod, Files.asByteSource(temp));
+        }
+        final boolean changed = OutputFiles.replaceIfChanged(temp, target);
+        return writeSidecars(target, Files.asByteSource(target)) | changed;
+    }
+
+    /**
+     * Gives outFile the content of an identical input's output, including its sidecars.
+     *
+     * @return false when the output was already up to date
+     */
+    boolean link(final File source, final File outFile) throws IOException {
+        File target = outFile;
+        if (isFingerprinted(outFile)) {
+            final String hash = Files.asByteSource(source).hash(Hashing.sha256()).toString();
+            target = getFingerprintedFile(outFile, hash.substring(0, fingerprintLength));
+            assets.put(getLogicalName(outFile), getLogicalName(target));
+        }
+
+        target.getParentFile().mkdirs();
+        boolean changed = OutputFiles.linkIfChanged(source, target, hardLinks);
+        if (gzip) {
+            changed |= linkSidecar(source, target, GZIP_SUFFIX);
+        }
+        if (deflate) {
+            changed |= linkSidecar(source, target, DEFLATE_SUFFIX);
+        }
+        return changed;
+    }
+
+    private boolean linkSidecar(final File source, final File target, final String suffix) throws IOException {
+        final File sidecar = new File(source.getPath() + suffix);
+        final File targetSidecar = new File(target.getPath() + suffix);
+        // the source has no sidecar when it is below gzipMinSize
+        return sidecar.isFile() ? OutputFiles.linkIfChanged(sidecar, targetSidecar, hardLinks) : targetSidecar.delete();
+    }
+
+    /**
+     * Copies an input to target as it is, without sidecars.
+     */
+    void copy(final File source, final File target, final int archiveMethod) throws IOException {
+        if (isArchived(target)) {
+            archive.put(getEntryName(target), Files.asByteSource(source), archiveMethod);
+        } else {
+            target.getParentFile().mkdirs();
+            OutputFiles.linkOrCopy(source, target, hardLinks);
+        }
+    }
+
+    /**
+     * Deletes an output with its sidecars.
+     */
+    void remove(final File target) {
+        delete(target);
+        delete(new File(target.getPath() + GZIP_SUFFIX));
+        delete(new File(target.getPath() + DEFLATE_SUFFIX));
+    }
+
+    /**
+     * @return the file outFile was last written to, or null when a fingerprinted outFile has not been written yet
+     */
+    File resolve(final File outFile) {
+        if (!isFingerprinted(outFile)) {
+            return outFile;
+        }
+        final String fingerprinted = assets.get(getLogicalName(outFile));
+        return fingerprinted == null ? null : new File(outputBase, fingerprinted);
+    }
+
+    /**
+     * @return true when the output gets a fingerprinted name, which entry pages never get as they are requested by
+     *         their own name
+     */
+    boolean isFingerprinted(final File outFile) {
+        return assets != null && !isPage(outFile.getName());
+    }
+
+    static boolean isPage(final String name) {
+        final String lowerCase = name.toLowerCase(Locale.ROOT);
+        return lowerCase.endsWith(FileType.HTML_FILE) || lowerCase.endsWith(".htm") || lowerCase.endsWith(
+                FileType.XHTML_FILE);
+    }
+
+    /**
+     * @return true when the output written for outFile, and all of its sidecars, exist
+     */
+    boolean hasOutput(final File outFile) {
+        final File target = resolve(outFile);
+        return target != null && exists(target) && hasSidecars(target);
+    }
+
+    private boolean hasSidecars(final File outFile) {
+        if (getSize(outFile) < gzipMinSize) {
+            return true;
+        }
+        return (!gzip || exists(new File(outFile.getPath() + GZIP_SUFFIX)))
+                && (!deflate || exists(new File(outFile.getPath() + DEFLATE_SUFFIX)));
+    }
+
+    /**
+     * @return true when the output written for outFile, and all of its sidecars, exist and are not older than the
+     *         given time
+     */
+    boolean isNewer(final File outFile, final long lastModified) {
+        return hasOutput(outFile) && getLastModified(resolve(outFile)) >= lastModified;
+    }
+
+    /**
+     * Same as {@link #isNewer(File, long)}, with the attributes read by a scan of the output directory.
+     *
+     * @param name
+     *            the path of the output relative to the scanned directory
+     */
+    boolean isNewer(final FileTreeSnapshot outputs, final String name, final long lastModified) {
+        final FileTreeSnapshot.Attributes output = outputs.get(name);
+        if (output == null || output.getLastModified() < lastModified) {
+            return false;
+        }
+        return output.getSize() < gzipMinSize || (!gzip || outputs.get(name + GZIP_SUFFIX) != null)
+                && (!deflate || outputs.get(name + DEFLATE_SUFFIX) != null);
+    }
+
+    /**
+     * Writes the content as the archive entry of target, followed by its sidecars.
+     */
+    private boolean writeEntry(final File target, final int archiveMethod, final ByteSource content)
+            throws IOException {
+        final boolean changed = archive.put(getEntryName(target), content, archiveMethod);
+        return writeSidecars(target, content) | changed;
+    }
+
+    /**
+     * @return a temporary file to write the output for outFile to, next to the archive when outFile is an entry
+     */
+    File createTempFile(final File outFile) throws IOException {
+        final File target = isArchived(outFile) ? outputBase.getAbsoluteFile() : outFile;
+        target.getParentFile().mkdirs();
+        return OutputFiles.createTempFile(target);
+    }
+
+    /**
+     * @return the name of the archive entry written for file, or null when file is not written to the archive
+     */
+    private String getEntryName(final File file) {
+        if (archive == null) {
+            return null;
+        }
+        final String base = outputBase.toPath().toAbsolutePath().normalize() + File.separator;
+        final String path = file.toPath().toAbsolutePath().normalize().toString();
+        return path.startsWith(base) ? archivePrefix + path.substring(base.length()).replace(File.separatorChar, '/')
+                : null;
+    }
+
+    private boolean isArchived(final File file) {
+        return getEntryName(file) != null;
+    }
+
+    boolean exists(final File file) {
+        final String entryName = getEntryName(file);
+        return entryName != null ? archive.has(entryName) : file.isFile();
+    }
+
+    long getSize(final File file) {
+        final String entryName = getEntryName(file);
+        return entryName != null ? Math.max(archive.getSize(entryName), 0L) : file.length();
+    }
+
+    long getLastModified(final File file) {
+        final String entryName = getEntryName(file);
+        return entryName != null ? archive.getLastModified(entryName) : file.lastModified();
+    }
+
+    private boolean delete(final File file) {
+        final String entryName = getEntryName(file);
+        return entryName != null ? archive.remove(entryName) : file.delete();
+    }
+
+    /**
+     * @return the outputs directly in dir, or null when it cannot be listed
+     */
+    private File[] list(final File dir) {
+        // the archive directory of dir is that of any file in it, which also works for the archive root
+        final String entryName = getEntryName(new File(dir, "-"));
+        if (entryName == null) {
+            return dir.listFiles();
+        }
+        final List<File> outputs = new ArrayList<File>();
+        for (final String name : archive.list(entryName.substring(0, entryName.length() - 1))) {
+            outputs.add(new File(dir, name));
+        }
+        return outputs.toArray(new File[outputs.size()]);
+    }
+
+    private static File getFingerprintedFile(final File outFile, final String hash) {
+        final String name = outFile.getName();
+        final int extension = name.lastIndexOf('.');
+        final String fingerprinted = extension < 0 ? name + "." + hash : name.substring(0, extension) + "." + hash
+                + name.substring(extension);
+        return new File(outFile.getParentFile(), fingerprinted);
+    }
+
+    /**
+     * @return the path of the file relative to the output base, as used in the asset manifest
+     */
+    String getLogicalName(final File file) {
+        // files below the output base need no canonical paths, which cost file system calls for every output
+        final String base = outputBase.toPath().toAbsolutePath().normalize() + File.separator;
+        final String path = file.toPath().toAbsolutePath().normalize().toString();
+        if (path.startsWith(base)) {
+            return path.substring(base.length()).replace(File.separatorChar, '/');
+        }
+        try {
+            return FileUtils.getRelativePath(outputBase, file);
+        } catch (final Exception e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Deletes fingerprinted outputs, and their sidecars, that the asset manifest no longer refers to.
+     *
+     * @return the outputs deleted
+     */
+    List<File> removeStaleFingerprints() {
+        final List<File> removed = new ArrayList<File>();
+        for (final Map.Entry<String, String> entry : assets.getEntries().entrySet()) {
+            final File current = new File(outputBase, entry.getValue());
+            final String name = new File(entry.getKey()).getName();
+            final int extension = name.lastIndexOf('.');
+            final String stem = extension < 0 ? name : name.substring(0, extension);
+            final String suffix = extension < 0 ? "" : name.substring(extension);
+            final Pattern stale = Pattern.compile(Pattern.quote(stem) + "\\.[0-9a-f]{" + fingerprintLength + "}"
+                    + Pattern.quote(suffix) + "(" + Pattern.quote(GZIP_SUFFIX) + "|" + Pattern.quote(DEFLATE_SUFFIX)
+                    + ")?");
+
+            final File[] candidates = list(current.getParentFile());
+            if (candidates == null) {
+                continue;
+            }
+            for (final File candidate : candidates) {
+                if (stale.matcher(candidate.getName()).matches()
+                        && !candidate.getName().startsWith(current.getName())) {
+                    if (delete(candidate)) {
+                        removed.add(candidate);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of bytes served for the file when gzip is enabled, otherwise -1
+     */
+    long getServedBytes(final File file) {
+        if (!gzip) {
+            return -1L;
+        }
+        final File gzipFile = new File(file.getPath() + GZIP_SUFFIX);
+        return exists(gzipFile) ? getSize(gzipFile) : getSize(file);
+    }
+
+    /**
+     * Adds the sizes of the outputs written so far to the budgets. Outputs of an archive are read back from the
+     * archive file, which has to be complete.
+     *
+     * @param outputTypes
+     *            file types of the outputs, by the name they were written under before fingerprinting
+     */
+    void measure(final Map<File, String> outputTypes, final SizeBudgets sizes) throws IOException {
+        final ZipFile zip = archive != null && outputBase.isFile() ? new ZipFile(outputBase) : null;
+        try {
+            for (final Map.Entry<File, String> output : outputTypes.entrySet()) {
+                final File target = resolve(output.getKey());
+                if (target == null || !exists(target)) {
+                    continue;
+                }
+
+                final String name = getLogicalName(output.getKey());
+                long gzipSize = -1L;
+                if (sizes.needsGzipSize(name)) {
+                    final File gzipFile = new File(target.getPath() + GZIP_SUFFIX);
+                    gzipSize = exists(gzipFile) ? getSize(gzipFile) : getGzipSize(getContent(target, zip));
+                }
+                sizes.add(name, output.getValue(), getSize(target), gzipSize);
+            }
+        } finally {
+            if (zip != null) {
+                zip.close();
+            }
+        }
+    }
+
+    private ByteSource getContent(final File file, final ZipFile zip) {
+        final String entryName = getEntryName(file);
+        if (entryName == null) {
+            return Files.asByteSource(file);
+        }
+        return new ByteSource() {
+
+            @Override
+            public InputStream openStream() throws IOException {
+                final ZipEntry entry = zip.getEntry(entryName);
+                if (entry == null) {
+                    throw new FileNotFoundException(entryName + " in " + outputBase);
+                }
+                return zip.getInputStream(entry);
+            }
+        };
+    }
+
+    /**
+     * @return the size of the content gzipped like a .gz sidecar
+     */
+    private long getGzipSize(final ByteSource content) throws IOException {
+        final CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+        writeSidecar(out, content, true);
+        return out.getCount();
+    }
+
+    /**
+     * Writes the enabled .gz and .deflate sidecars next to outFile.
+     *
+     * @return true when a sidecar was written or deleted
+     */
+    private boolean writeSidecars(final File outFile, final ByteSource content) throws IOException {
+        final File gzipFile = new File(outFile.getPath() + GZIP_SUFFIX);
+        final File deflateFile = new File(outFile.getPath() + DEFLATE_SUFFIX);
+
+        if (content.size() < gzipMinSize) {
+            // too small to be worth it, also drop sidecars left over from bigger versions
+            final boolean gzipDeleted = gzip && delete(gzipFile);
+            final boolean deflateDeleted = deflate && delete(deflateFile);
+            return gzipDeleted || deflateDeleted;
+        }
+
+        boolean changed = false;
+        if (gzip) {
+            changed |= writeSidecar(gzipFile, content, true);
+        }
+        if (deflate) {
+            changed |= writeSidecar(deflateFile, content, false);
+        }
+        return changed;
+    }
+
+    /**
+     * Compresses into a temporary file first, so that an unchanged sidecar is not rewritten. Sidecars in an archive
+     * are compressed in memory and stored as they are.
+     */
+    private boolean writeSidecar(final File sidecar, final ByteSource content, final boolean gzipFormat)
+            throws IOException {
+        if (isArchived(sidecar)) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeSidecar(bytes, content, gzipFormat);
+            return archive.put(getEntryName(sidecar), ByteSource.wrap(bytes.toByteArray()), ZipEntry.STORED);
+        }
+
+        final File temp = OutputFiles.createTempFile(sidecar);
+        try {
+            writeSidecar(new FileOutputStream(temp), content, gzipFormat);
+            return OutputFiles.replaceIfChanged(temp, sidecar);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void writeSidecar(final OutputStream target, final ByteSource content, final boolean gzipFormat)
+            throws IOException {
+        final Deflater deflater = gzipFormat ? null : new Deflater(gzipLevel, true);
+        final OutputStream out = gzipFormat ? new GZIPOutputStream(target, SIDECAR_BUFFER_SIZE) {
+            {
+                def.setLevel(gzipLevel);
+            }
+        } : new DeflaterOutputStream(target, deflater, SIDECAR_BUFFER_SIZE);
+        try {
+            content.copyTo(out);
+        } finally {
+            out.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.io.Files;
+
+/**
+ * Reads upcoming inputs into memory on I/O threads, ahead of the workers compressing them. Files are read in the
+ * order they were added, as long as the content held stays below a byte limit. Files bigger than the limit, and
+ * files a worker asks for before their read started, are left to the worker.
+ */
+class Prefetcher {
+
+    private final long limit;
+    private final ExecutorService readers;
+
+    // files not read yet, in compression order, with their expected size
+    private final Map<File, Long> queued = new LinkedHashMap<File, Long>();
+    private final Set<File> reading = new HashSet<File>();
+    private final Map<File, byte[]> contents = new HashMap<File, byte[]>();
+
+    // bytes read or being read, and not taken yet
+    private long held = 0L;
+    private boolean closed = false;
+
+    public Prefetcher(final int threads, final long limit) {
+        this.limit = limit;
+        this.readers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            readers.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        readQueued();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    public synchronized void add(final File file) {
+        final long size = file.length();
+        if (size <= limit) {
+            queued.put(file, size);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the content of the file, or null when it was not read ahead and the caller has to read it
+     */
+    public synchronized byte[] take(final File file) throws InterruptedException {
+        if (queued.remove(file) != null) {
+            return null;
+        }
+        while (reading.contains(file)) {
+            wait();
+        }
+        final byte[] content = contents.remove(file);
+        if (content != null) {
+            held -= content.length;
+            notifyAll();
+        }
+        return content;
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            queued.clear();
+            contents.clear();
+            notifyAll();
+        }
+        readers.shutdownNow();
+    }
+
+    private void readQueued() throws InterruptedException {
+        while (true) {
+            final File file;
+            final long size;
+            synchronized (this) {
+                // the next file is read when it fits, or when nothing else is held
+                while (!closed && (queued.isEmpty() || held > 0 && held + queued.values().iterator().next() > limit)) {
+                    wait();
+                }
+                if (closed) {
+                    return;
+                }
+                final Iterator<Map.Entry<File, Long>> next = queued.entrySet().iterator();
+                final Map.Entry<File, Long> entry = next.next();
+                next.remove();
+                file = entry.getKey();
+                size = entry.getValue();
+                reading.add(file);
+                held += size;
+            }
+
+            byte[] content = null;
+            try {
+                content = Files.toByteArray(file);
+            } catch (final IOException ioe) {
+                // left to the worker, which reports the error
+            }
+
+            synchronized (this) {
+                reading.remove(file);
+                held -= size;
+                if (content != null && !closed) {
+                    contents.put(file, content);
+                    held += content.length;
+                }
+                notifyAll();
+            }
+        }
+    }
+}
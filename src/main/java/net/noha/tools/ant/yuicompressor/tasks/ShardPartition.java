@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits work items into shards of similar total size. Items are taken biggest first, each going to the shard with
+ * the least bytes so far, ties broken by name and by shard index, so every node computes the same split from the
+ * same sources.
+ */
+class ShardPartition {
+
+    private final List<Item> items = new ArrayList<Item>();
+
+    public void add(final String name, final long bytes) {
+        items.add(new Item(name, bytes));
+    }
+
+    /**
+     * @return the names of the items of one shard
+     */
+    public Set<String> getShard(final int index, final int count) {
+        final List<Item> sorted = new ArrayList<Item>(items);
+        Collections.sort(sorted, new Comparator<Item>() {
+
+            public int compare(final Item a, final Item b) {
+                if (a.bytes != b.bytes) {
+                    return a.bytes > b.bytes ? -1 : 1;
+                }
+                return a.name.compareTo(b.name);
+            }
+        });
+
+        final long[] loads = new long[count];
+        final Set<String> shard = new HashSet<String>();
+        for (final Item item : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            loads[lightest] += item.bytes;
+            if (lightest == index) {
+                shard.add(item.name);
+            }
+        }
+        return shard;
+    }
+
+    private static class Item {
+
+        private final String name;
+        private final long bytes;
+
+        Item(final String name, final long bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Sizes of the outputs of a run, checked against the budget elements of the task and against the baseline stored by
+ * an earlier run. Besides single outputs, the baseline holds the total size of every file type, so that growth spread
+ * over many small files is caught too.
+ *
+ * Thread safe.
+ */
+final class SizeBudgets {
+
+    private final List<Budget> budgets;
+    private final Properties baseline;
+    private final int tolerance;
+
+    // size and gzipped size by output name and by file type, the gzipped size is -1 when it was not measured
+    private final Map<String, long[]> files = new TreeMap<String, long[]>();
+    private final Map<String, long[]> types = new TreeMap<String, long[]>();
+
+    /**
+     * @param baseline
+     *            sizes stored by {@link #toBaseline()}, empty when there are none yet, or null when no baseline is
+     *            kept
+     * @param tolerance
+     *            growth over the baseline in percent that is not a regression yet
+     */
+    SizeBudgets(final List<Budget> budgets, final Properties baseline, final int tolerance) {
+        this.budgets = budgets;
+        this.baseline = baseline;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return true when the gzipped size of the output is checked, and has to be measured
+     */
+    boolean needsGzipSize(final String name) {
+        if (baseline != null) {
+            return true;
+        }
+        for (final Budget budget : budgets) {
+            if (budget.getMaxGzipSize() >= 0 && budget.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param gzipSize
+     *            gzipped size of the output, or -1 when it was not measured
+     */
+    synchronized void add(final String name, final String fileType, final long size, final long gzipSize) {
+        files.put(name, new long[] { size, gzipSize });
+
+        final long[] total = types.get(fileType);
+        if (total == null) {
+            types.put(fileType, new long[] { size, gzipSize });
+        } else {
+            total[0] += size;
+            total[1] = total[1] < 0 || gzipSize < 0 ? -1L : total[1] + gzipSize;
+        }
+    }
+
+    synchronized int getOutputCount() {
+        return files.size();
+    }
+
+    /**
+     * @return a description of every output over its budget and of every output or file type that grew since the
+     *         baseline, in name order
+     */
+    synchronized List<String> check() {
+        final List<String> violations = new ArrayList<String>();
+        for (final Map.Entry<String, long[]> file : files.entrySet()) {
+            final String name = file.getKey();
+            final long size = file.getValue()[0];
+            final long gzipSize = file.getValue()[1];
+            for (final Budget budget : budgets) {
+                if (!budget.matches(name)) {
+                    continue;
+                }
+                if (budget.getMaxSize() >= 0 && size > budget.getMaxSize()) {
+                    violations.add(name + " is " + size + " bytes, over the budget of " + budget.getMaxSize()
+                            + " for " + budget.getPattern());
+                }
+                if (budget.getMaxGzipSize() >= 0 && gzipSize > budget.getMaxGzipSize()) {
+                    violations.add(name + " is " + gzipSize + " bytes gzipped, over the budget of "
+                            + budget.getMaxGzipSize() + " for " + budget.getPattern());
+                }
+            }
+            if (baseline != null) {
+                compare(violations, name, "file." + name, file.getValue());
+            }
+        }
+
+        if (baseline != null) {
+            for (final Map.Entry<String, long[]> type : types.entrySet()) {
+                compare(violations, "All " + type.getKey() + " files", "type" + type.getKey(), type.getValue());
+            }
+        }
+        return violations;
+    }
+
+    private void compare(final List<String> violations, final String label, final String key, final long[] sizes) {
+        final long size = getLong(baseline, key + ".size");
+        final long gzipSize = getLong(baseline, key + ".gzip");
+        if (isRegression(size, sizes[0])) {
+            violations.add(label + " grew from " + size + " to " + sizes[0] + " bytes since the baseline ("
+                    + getGrowth(size, sizes[0]) + ")");
+        }
+        if (sizes[1] >= 0 && isRegression(gzipSize, sizes[1])) {
+            violations.add(label + " grew from " + gzipSize + " to " + sizes[1] + " bytes gzipped since the baseline ("
+                    + getGrowth(gzipSize, sizes[1]) + ")");
+        }
+    }
+
+    private boolean isRegression(final long before, final long after) {
+        return before >= 0 && after > before + before * tolerance / 100L;
+    }
+
+    private static String getGrowth(final long before, final long after) {
+        return before == 0 ? "new content" : "+" + (after - before) * 100L / before + "%";
+    }
+
+    /**
+     * @return the sizes stored in a baseline file by {@link #storeBaseline(File)}
+     */
+    static Properties loadBaseline(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Replaces the baseline file with the measured sizes.
+     */
+    void storeBaseline(final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        toBaseline().store(out, "yui-compressor output sizes");
+        OutputFiles.writeAtomically(file, out.toByteArray());
+    }
+
+    /**
+     * @return the measured sizes, to be compared with by later runs
+     */
+    synchronized Properties toBaseline() {
+        final Properties properties = new Properties();
+        store(properties, "file.", files);
+        // file types start with a dot
+        store(properties, "type", types);
+        return properties;
+    }
+
+    private static void store(final Properties properties, final String prefix, final Map<String, long[]> sizes) {
+        for (final Map.Entry<String, long[]> entry : sizes.entrySet()) {
+            properties.setProperty(prefix + entry.getKey() + ".size", String.valueOf(entry.getValue()[0]));
+            if (entry.getValue()[1] >= 0) {
+                properties.setProperty(prefix + entry.getKey() + ".gzip", String.valueOf(entry.getValue()[1]));
+            }
+        }
+    }
+
+    private static long getLong(final Properties properties, final String name) {
+        final String value = properties.getProperty(name);
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
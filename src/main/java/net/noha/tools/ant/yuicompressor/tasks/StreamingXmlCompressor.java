@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Minifies XML in a single pass with constant memory, instead of holding the document like {@link
+ * com.googlecode.htmlcompressor.compressor.XmlCompressor} does. Like that compressor it removes comments, whitespace
+ * between tags, surrounding whitespace, and redundant whitespace inside tags, and keeps CDATA sections as they are.
+ * Unlike it, quoted attribute values are always kept as they are, and so are the markup declarations of a DOCTYPE
+ * internal subset.
+ */
+public abstract class StreamingXmlCompressor implements FileCompressor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String COMMENT_START = "!--";
+    private static final String COMMENT_END = "-->";
+    private static final String CDATA_START = "![CDATA[";
+    private static final String CDATA_END = "]]>";
+
+    private final String fileType;
+    private final String label;
+
+    protected StreamingXmlCompressor(final String fileType, final String label) {
+        this.fileType = fileType;
+        this.label = label;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * @return true when whitespace between the tags inside the element is significant
+     */
+    protected boolean isWhitespacePreserved(final String element) {
+        return false;
+    }
+
+    /**
+     * @return true when the element and everything inside it is left out
+     */
+    protected boolean isRemoved(final String element, final CompressionContext context) {
+        return false;
+    }
+
+    public void compress(final Reader reader, final Writer out, final CompressionContext context) throws IOException {
+        final Input in = new Input(reader);
+
+        // whitespace is held back until it is known not to be between two tags or at the end
+        final StringBuilder pending = new StringBuilder();
+        boolean afterTag = false;
+        boolean started = false;
+        int preserved = 0;
+
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '<') {
+                if (in.skip(COMMENT_START)) {
+                    in.copyThrough(COMMENT_END, null);
+                } else if (in.skip(CDATA_START)) {
+                    flush(pending, out);
+                    out.write('<');
+                    out.write(CDATA_START);
+                    in.copyThrough(CDATA_END, out);
+                    afterTag = false;
+                    started = true;
+                } else {
+                    final boolean end = in.skip("/");
+                    final String name = readName(in);
+                    if (!end && isRemoved(name, context)) {
+                        if (!copyTag(in, null, false, false)) {
+                            in.copyThrough("</" + name, null);
+                            in.copyThrough(">", null);
+                        }
+                        continue;
+                    }
+
+                    if (afterTag && preserved == 0) {
+                        pending.setLength(0);
+                    } else {
+                        flush(pending, out);
+                    }
+                    out.write(end ? "</" : "<");
+                    out.write(name);
+                    final boolean empty = copyTag(in, out, name.startsWith("!"), name.startsWith("?"));
+                    if (isWhitespacePreserved(name)) {
+                        preserved += end ? -1 : empty ? 0 : 1;
+                    }
+                    afterTag = true;
+                    started = true;
+                }
+            } else if (isWhitespace(c)) {
+                if (started) {
+                    pending.append((char) c);
+                }
+            } else {
+                flush(pending, out);
+                out.write(c);
+                afterTag = false;
+                started = true;
+            }
+        }
+        out.flush();
+    }
+
+    private static String readName(final Input in) throws IOException {
+        final StringBuilder name = new StringBuilder();
+        int c;
+        while ((c = in.peek()) >= 0 && !isWhitespace(c) && c != '>' && c != '/') {
+            name.append((char) in.read());
+        }
+        return name.toString();
+    }
+
+    /**
+     * Copies the rest of a tag, collapsing whitespace to single spaces and removing it around = and before the end.
+     * The internal subset of a declaration, between [ and ], is copied with its markup, and a processing instruction
+     * only ends at ?&gt;. Nothing is written when out is null.
+     *
+     * @param declaration
+     *            true for a tag starting with &lt;! like DOCTYPE, which may hold an internal subset
+     * @param instruction
+     *            true for a processing instruction, starting with &lt;?
+     * @return true when the tag was an empty element tag
+     */
+    private static boolean copyTag(final Input in, final Writer out, final boolean declaration,
+            final boolean instruction) throws IOException {
+        final Writer target = out != null ? out : NullWriter.INSTANCE;
+        boolean space = false;
+        int subset = 0;
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (isWhitespace(c)) {
+                space = true;
+            } else if (instruction && c == '?' && in.skip(">")) {
+                target.write("?>");
+                return false;
+            } else if (c == '>' && !instruction && subset == 0) {
+                target.write(c);
+                return false;
+            } else if (c == '/' && !instruction && subset == 0 && in.skip(">")) {
+                target.write("/>");
+                return true;
+            } else if (c == '=') {
+                target.write(c);
+                space = false;
+                while (isWhitespace(in.peek())) {
+                    in.read();
+                }
+            } else {
+                if (space) {
+                    target.write(' ');
+                    space = false;
+                }
+                target.write(c);
+                if ((c == '"' || c == '\'') && !instruction) {
+                    in.copyThrough(String.valueOf((char) c), out);
+                } else if (declaration && c == '[') {
+                    subset++;
+                } else if (subset > 0 && c == ']') {
+                    subset--;
+                } else if (subset > 0 && c == '<' && in.skip(COMMENT_START)) {
+                    target.write(COMMENT_START);
+                    in.copyThrough(COMMENT_END, out);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void flush(final StringBuilder pending, final Writer out) throws IOException {
+        if (pending.length() > 0) {
+            out.append(pending);
+            pending.setLength(0);
+        }
+    }
+
+    /**
+     * Same characters as \s in regular expressions.
+     */
+    private static boolean isWhitespace(final int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    /**
+     * Discards everything written to it.
+     */
+    private static class NullWriter extends Writer {
+
+        static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Buffered input with enough lookahead for the longest marker.
+     */
+    private static class Input {
+
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+        private boolean eof = false;
+
+        Input(final Reader reader) {
+            this.reader = reader;
+        }
+
+        int read() throws IOException {
+            if (position == limit && !fill(1)) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        int peek() throws IOException {
+            if (position == limit && !fill(1)) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        /**
+         * Consumes the given text when the input continues with it.
+         */
+        boolean skip(final String text) throws IOException {
+            if (limit - position < text.length() && !fill(text.length())) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer[position + i] != text.charAt(i)) {
+                    return false;
+                }
+            }
+            position += text.length();
+            return true;
+        }
+
+        /**
+         * Consumes the input up to and including the end marker, copying it to out unless out is null.
+         */
+        void copyThrough(final String end, final Writer out) throws IOException {
+            final int last = end.length() - 1;
+            final char[] window = new char[end.length()];
+            int seen = 0;
+            int c;
+            while ((c = read()) >= 0) {
+                if (out != null) {
+                    out.write(c);
+                }
+                System.arraycopy(window, 1, window, 0, last);
+                window[last] = (char) c;
+                if (++seen >= window.length && c == end.charAt(last) && matches(window, end)) {
+                    return;
+                }
+            }
+        }
+
+        private static boolean matches(final char[] window, final String end) {
+            for (int i = 0; i < window.length; i++) {
+                if (window[i] != end.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean fill(final int needed) throws IOException {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            while (limit < needed && !eof) {
+                final int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            }
+            return limit >= needed;
+        }
+    }
+}
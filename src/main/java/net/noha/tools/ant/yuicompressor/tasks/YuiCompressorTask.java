@@ -36,29 +36,54 @@
 
 package net.noha.tools.ant.yuicompressor.tasks;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
-import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.UnsupportedCharsetException;
+import java.nio.charset.CodingErrorAction;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import net.noha.tools.ant.yuicompressor.tasks.CompressionTimer.Phase;
 
 import org.apache.tools.ant.BuildException;
-import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.MatchingTask;
-import org.mozilla.javascript.ErrorReporter;
+import org.apache.tools.ant.util.FileUtils;
 import org.mozilla.javascript.EvaluatorException;
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
-import com.googlecode.htmlcompressor.compressor.XmlCompressor;
-import com.yahoo.platform.yui.compressor.CssCompressor;
 import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
 
 /**
@@ -78,7 +103,64 @@ public class YuiCompressorTask extends MatchingTask {
     private boolean enabled = true;
     protected boolean preserveAllSemiColons = true;
     protected boolean optimize = true;
+    protected CompressionLevel level = CompressionLevel.STANDARD;
     protected boolean verbose = true;
+    protected int threads = 1;
+    protected boolean fastScan = false;
+    protected File cacheFile;
+    protected File cacheDir;
+    protected long cacheDirMaxSize = 1024L * 1024L * 1024L;
+    protected long memoryCacheSize = 0L;
+    protected boolean deduplicate = true;
+    protected boolean hardLinks = false;
+    protected long memoryBudget = 0L;
+    protected int ioThreads = 0;
+    protected long readAhead = 16L * 1024L * 1024L;
+
+    // precompressed sidecars
+    protected boolean gzip = false;
+    protected boolean deflate = false;
+    protected int gzipLevel = Deflater.BEST_COMPRESSION;
+    protected long gzipMinSize = 0L;
+
+    // fingerprinted output names
+    protected boolean fingerprint = false;
+    protected int fingerprintLength = 8;
+    protected File assetManifest;
+    protected boolean removeStaleFingerprints = false;
+
+    // compression daemon
+    protected boolean daemon = false;
+    protected int daemonIdleTimeout = 600;
+    protected File daemonStateFile;
+
+    // timing report
+    protected File reportFile;
+    protected int reportSlowestFiles = 10;
+
+    // watch mode
+    protected boolean watch = false;
+    protected long watchDebounce = 300L;
+
+    // sharding across build nodes, each shard writes its statistics and asset manifest entries to the shard file
+    protected int shardIndex = 0;
+    protected int shardCount = 1;
+    protected File shardFile;
+
+    // archive output, written instead of toDir
+    protected File toArchive;
+    protected String archivePrefix = "";
+    protected int archiveMethod = ZipEntry.DEFLATED;
+
+    // size budgets, checked against the nested budget elements and the baseline after every run
+    protected File budgetBaseline;
+    protected int budgetTolerance = 0;
+    protected boolean updateBudgetBaseline = false;
+    protected boolean failOnBudget = false;
+
+    // inlining into HTML pages, small local scripts and style sheets replace their references
+    protected long inlineMaxSize = 0L;
+    protected boolean compressInline = false;
 
     // suffixes
     protected String jsSuffix = ".js";
@@ -87,142 +169,760 @@ public class YuiCompressorTask extends MatchingTask {
     protected String htmlSuffix = ".html";
     protected String xhtmlSuffix = ".xhtml";
 
-    // stats
-    private final CompressionStatistics stats = new CompressionStatistics();
+    // estimated heap held per input byte while a file is compressed: decoded chars, the compressor's copy of them,
+    // its result and the encoded output
+    private static final int MEMORY_PER_INPUT_BYTE = 8;
 
-    private void compressFile(final File inFile, final File outFile, final String fileType) throws EvaluatorException,
-            BuildException {
-        // do not recompress when outFile is newer
+    // compressed fragments cached by the engine when pages inline or compress scripts and styles
+    private static final long EMBEDDED_CACHE_SIZE = 16L * 1024L * 1024L;
+
+    // engine shared by the invocations of the task loaded by the same class loader, only used when memoryCacheSize
+    // is set, so that content compressed by one invocation is taken from memory by the next ones
+    private static CompressionEngine sharedEngine;
+
+    // outputs queued per I/O thread before compression waits for the writes
+    private static final int WRITES_PER_IO_THREAD = 4;
+
+    // stats, reset for every batch of files
+    private CompressionStatistics stats = new CompressionStatistics();
+
+    // input buffers are reused across the files handled by each thread
+    private final ThreadLocal<FileDecoder> decoders = new ThreadLocal<FileDecoder>() {
+
+        @Override
+        protected FileDecoder initialValue() {
+            return new FileDecoder();
+        }
+    };
+
+    // nested bundles, compressed after the files of the fileset
+    private final List<Bundle> bundles = new ArrayList<Bundle>();
+
+    // nested budget elements
+    private final List<Budget> budgets = new ArrayList<Budget>();
+
+    // nested filetype elements, and the engine running the compressors they configure
+    private final List<FileTypeOptions> fileTypes = new ArrayList<FileTypeOptions>();
+    private CompressionEngine engine;
+
+    // content based up-to-date checks, only used when cacheFile is set
+    private CompressionManifest manifest;
+
+    // logical to fingerprinted output names, only used when fingerprinting
+    private AssetManifest assets;
+
+    // per file timings, only collected when reportFile is set
+    private CompressionReport report;
+
+    // outputs by input content, only used when deduplicating
+    private Deduplicator deduplicator;
+
+    // heap admitted to the files compressed at the same time
+    private MemoryBudget memory;
+
+    // outputs shared with other workspaces by input content and options, only used when cacheDir is set
+    private OutputCache outputCache;
+
+    // inputs read ahead and outputs written behind compression, only used when ioThreads is set
+    private Prefetcher prefetcher;
+    private ExecutorService writers;
+
+    // entries written instead of output files, only used when toArchive is set
+    private ArchiveOutput archive;
+
+    // writes the outputs of a run to toDir or the archive
+    private OutputPublisher publisher;
+
+    // scripts and style sheets inlined into HTML pages, only used when inlineMaxSize is set
+    private HtmlInliner inliner;
+
+    // inputs and outputs with their attributes, only used when fastScan is set and until the first run is planned
+    private FileTreeSnapshot scannedInputs;
+    private FileTreeSnapshot scannedOutputs;
+
+    /**
+     * @return null when the file is done, otherwise the write of its output, still running on an I/O thread
+     */
+    private Future<?> compressFile(final String file, final File inFile, final File outFile, final String fileType,
+            final LogBuffer log) throws EvaluatorException, BuildException {
+        // inputs read ahead by the I/O threads are taken from memory
+        final byte[] prefetched = takePrefetched(inFile);
+        final ByteSource page = prefetched != null ? ByteSource.wrap(prefetched) : Files.asByteSource(inFile);
+
+        // pages depend on the files inlined into them as well
+        final List<File> inlined;
+        try {
+            inlined = isInlining(fileType) ? inliner.getInlinedFiles(page.asCharSource(charset).read(), inFile)
+                    : Collections.<File> emptyList();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading input file", ioe);
+        }
+        final ByteSource input = inlined.isEmpty() ? page : getInlinedSource(page, inlined);
+
+        // do not recompress when outFile is up to date
         // always recompress when outFile and inFile are exactly the same file
-        if (outFile.isFile() && !inFile.getAbsolutePath().equals(outFile.getAbsolutePath())) {
-            if (outFile.lastModified() >= inFile.lastModified()) {
-                return;
+        final boolean inPlace = inFile.getAbsolutePath().equals(outFile.getAbsolutePath());
+        String manifestKey = null;
+        if (manifest != null && !inPlace) {
+            try {
+                manifestKey = CompressionManifest.createKey(input, getOptionsKey(fileType) + ";output="
+                        + getManifestOutput(outFile));
+            } catch (final IOException ioe) {
+                throw new BuildException("I/O Error when reading input file", ioe);
             }
         }
+        if (!inPlace && (manifestKey != null ? publisher.hasOutput(outFile) && manifest.isUpToDate(file, manifestKey)
+                : publisher.isNewer(outFile, getLastModified(inFile, inlined)))) {
+            return null;
+        }
 
         try {
-            // prepare input file
-            Reader in = openFile(inFile);
-
-            // prepare output file
-            outFile.getParentFile().mkdirs();
-            Writer out = new OutputStreamWriter(new FileOutputStream(outFile), charset);
-
-            if (fileType.equals(FileType.JS_FILE)) {
-                final JavaScriptCompressor compressor = createJavaScriptCompressor(in);
-                compressor.compress(out, lineBreakPosition, munge, warn, preserveAllSemiColons, !optimize);
-            } else if (fileType.equals(FileType.CSS_FILE)) {
-                final CssCompressor compressor = new CssCompressor(in);
-                compressor.compress(out, lineBreakPosition);
-            } else if (fileType.equals(FileType.HTML_FILE) || fileType.equals(FileType.XHTML_FILE)) {
-                final HtmlCompressor compressor = new HtmlCompressor();
-                out.write(compressor.compress(readerToString(in)));
-            } else if (fileType.equals(FileType.XML_FILE)){
-                final XmlCompressor compressor = new XmlCompressor();
-                out.write(compressor.compress(readerToString(in)));
-            }
-
-            // close all streams
-            in.close();
-            in = null;
-            out.close();
-            out = null;
+            final CompressionTimer timer = new CompressionTimer(file, fileType);
 
-            if (verbose) {
-                log(stats.getFileStats(inFile, outFile, fileType));
+            HashCode contentHash = null;
+            if (deduplicator != null || outputCache != null) {
+                contentHash = input.hash(Hashing.sha256());
+            }
+
+            // identical inputs are only compressed once, the others get the same output
+            String contentKey = null;
+            Deduplicator.Original original = null;
+            if (deduplicator != null) {
+                contentKey = fileType + ":" + contentHash;
+                original = claimOriginal(contentKey, file);
+            }
+
+            if (original != null) {
+                // the input was read for its hash, reported like the input of a compressed file
+                timer.count(Phase.READ, inFile.length());
+                timer.begin();
+                final boolean changed = publisher.link(original.getFile(), outFile);
+                timer.end(Phase.WRITE, publisher.getSize(publisher.resolve(outFile)));
+                stats.addDeduplicated(inFile.length(), original.getCompressNanos());
+                new FileCompletion(file, inFile, outFile, fileType, manifestKey, null, timer, log).complete(changed);
+                return null;
+            }
+
+            final String cacheKey = outputCache != null ? getCacheKey(contentHash, fileType) : null;
+            final FileCompletion completion = new FileCompletion(file, inFile, outFile, fileType, manifestKey,
+                    contentKey, timer, log);
+            boolean handedOver = false;
+            try {
+                final File cached = cacheKey != null ? copyFromCache(cacheKey, inFile, outFile, timer, log) : null;
+                if (cached != null) {
+                    final boolean changed;
+                    try {
+                        timer.begin();
+                        changed = publisher.publish(outFile, getArchiveMethod(fileType), cached);
+                        timer.end(Phase.WRITE, publisher.getSize(publisher.resolve(outFile)));
+                    } finally {
+                        cached.delete();
+                    }
+                    handedOver = true;
+                    completion.complete(changed);
+                    return null;
+                }
+
+                final Future<?> write = compressAndWrite(page, prefetched, completion, cacheKey);
+                handedOver = true;
+                return write;
+            } finally {
+                if (!handedOver) {
+                    completion.abort();
+                }
             }
         } catch (final IOException ioe) {
             throw new BuildException("I/O Error when compressing file", ioe);
         }
     }
 
-    private String readerToString(Reader in) throws IOException {
-        final StringBuilder stringBuilder = new StringBuilder();
-        // Read the stream...
-        int c;
-        while ((c = in.read()) != -1) {
-            stringBuilder.append((char) c);
+    private boolean isInlining(final String fileType) {
+        return inliner != null && isHtml(fileType);
+    }
+
+    private static boolean isHtml(final String fileType) {
+        return fileType.equals(FileType.HTML_FILE) || fileType.equals(FileType.XHTML_FILE);
+    }
+
+    /**
+     * @return the page followed by the paths and contents of the files inlined into it, which the output depends on
+     */
+    private ByteSource getInlinedSource(final ByteSource page, final List<File> inlined) {
+        final List<ByteSource> sources = new ArrayList<ByteSource>();
+        sources.add(page);
+        for (final File file : inlined) {
+            sources.add(ByteSource.wrap(("\n" + file.getAbsolutePath() + "\n").getBytes(Charsets.UTF_8)));
+            sources.add(Files.asByteSource(file));
+        }
+        return ByteSource.concat(sources);
+    }
+
+    private static long getLastModified(final File inFile, final List<File> inlined) {
+        long lastModified = inFile.lastModified();
+        for (final File file : inlined) {
+            lastModified = Math.max(lastModified, file.lastModified());
         }
-        return stringBuilder.toString();
+        return lastModified;
     }
 
-    private void copyFile(final File srcFile, final File targetFile) throws IOException {
-        targetFile.getParentFile().mkdirs();
-        // if necessary, creates the target file
-        targetFile.createNewFile();
+    /**
+     * Compresses in memory when the memory budget allows, waiting for other files to finish if needed. Streaming
+     * compressors, like the XML ones, go from file to file instead. Outputs compressed in memory
+     * are written by the I/O threads when there are any, holding their share of the memory budget until then.
+     *
+     * @param prefetched
+     *            content of the input when it was read ahead, otherwise null
+     * @return null when the file is done, otherwise the write of its output
+     */
+    private Future<?> compressAndWrite(final ByteSource input, final byte[] prefetched,
+            final FileCompletion completion, final String cacheKey) throws IOException, BuildException {
+        final File inFile = completion.inFile;
+        final File outFile = completion.outFile;
+        final String fileType = completion.fileType;
+        final CompressionTimer timer = completion.timer;
+        final LogBuffer log = completion.log;
+
+        final FileCompressor compressor = getCompressors().get(fileType);
+        if (compressor.isStreaming()) {
+            final boolean changed = compressStreaming(input, outFile, fileType, timer, compressor, cacheKey, log);
+            completion.complete(changed);
+            return null;
+        }
+
+        final long inBytes = inFile.length();
+        final long required = inBytes * MEMORY_PER_INPUT_BYTE;
 
-        FileChannel srcChannel = null;
-        FileChannel dstChannel = null;
+        acquireMemory(required, inFile);
+        boolean released = false;
         try {
-            srcChannel = new FileInputStream(srcFile).getChannel();
-            dstChannel = new FileOutputStream(targetFile).getChannel();
-            dstChannel.transferFrom(srcChannel, 0, srcChannel.size());
+            // read in full up front so that compressing a file onto itself is safe
+            timer.begin();
+            final CharBuffer chars = prefetched != null ? decoders.get().decode(prefetched, charset) : decoders.get()
+                    .decode(inFile, charset);
+            timer.end(Phase.READ, inBytes);
+
+            timer.begin();
+            final byte[] result = compress(isInlining(fileType) ? CharBuffer.wrap(inliner.inline(chars.toString(),
+                    inFile, log).toCharArray()) : chars, fileType, log);
+            timer.end(Phase.COMPRESS, inBytes);
+
+            released = true;
+            if (writers != null) {
+                return writers.submit(new Callable<Object>() {
+
+                    public Object call() throws IOException {
+                        writeCompressed(completion, result, required, cacheKey);
+                        return null;
+                    }
+                });
+            }
+            writeCompressed(completion, result, required, cacheKey);
+            return null;
         } finally {
-            srcChannel.close();
-            dstChannel.close();
+            if (!released) {
+                memory.release(required);
+            }
+        }
+    }
+
+    private void writeCompressed(final FileCompletion completion, final byte[] result, final long required,
+            final String cacheKey) throws IOException {
+        try {
+            completion.timer.begin();
+            final boolean changed = publisher.write(completion.outFile, getArchiveMethod(completion.fileType), result);
+            completion.timer.end(Phase.WRITE, publisher.getSize(publisher.resolve(completion.outFile)));
+            if (cacheKey != null) {
+                outputCache.put(cacheKey, ByteSource.wrap(result), completion.log);
+            }
+            completion.complete(changed);
+        } finally {
+            memory.release(required);
+            completion.abort();
         }
     }
 
-    private JavaScriptCompressor createJavaScriptCompressor(final Reader in) throws IOException {
-        final JavaScriptCompressor compressor = new JavaScriptCompressor(in, new ErrorReporter() {
+    /**
+     * State of one file kept until its output is written, which may happen on an I/O thread, for the bookkeeping
+     * that follows.
+     */
+    private class FileCompletion {
+
+        private final String file;
+        private final File inFile;
+        private final File outFile;
+        private final String fileType;
+        private final String manifestKey;
+        private final String contentKey;
+        private final CompressionTimer timer;
+        private final LogBuffer log;
 
-            public void error(final String message, final String sourceName, final int line, final String lineSource,
-                    final int lineOffset) {
-                log(getMessage(sourceName, message, line, lineOffset), Project.MSG_ERR);
+        private boolean done = false;
+
+        FileCompletion(final String file, final File inFile, final File outFile, final String fileType,
+                final String manifestKey, final String contentKey, final CompressionTimer timer,
+                final LogBuffer log) {
+            this.file = file;
+            this.inFile = inFile;
+            this.outFile = outFile;
+            this.fileType = fileType;
+            this.manifestKey = manifestKey;
+            this.contentKey = contentKey;
+            this.timer = timer;
+            this.log = log;
+        }
+
+        /**
+         * Hands the written output to the duplicates waiting for it, and records it.
+         */
+        void complete(final boolean changed) {
+            done = true;
+            final File written = publisher.resolve(outFile);
+            if (contentKey != null) {
+                deduplicator.complete(contentKey, written, timer.getNanos(Phase.COMPRESS));
+            }
+            if (report != null) {
+                report.add(timer);
+            }
+            if (manifestKey != null) {
+                manifest.update(file, manifestKey);
             }
 
-            private String getMessage(final String source, final String message, final int line, final int lineOffset) {
-                String logMessage;
-                if (line < 0) {
-                    logMessage = source != null ? new StringBuilder().append(source).append(":").toString()
-                            : new StringBuilder().append("").append(message).toString();
-                } else {
-                    logMessage = source != null ? new StringBuilder().append(source).append(":").toString()
-                            : new StringBuilder().append("").append(line).append(":").append(lineOffset).append(":")
-                                    .append(message).toString();
+            // shards always collect statistics for their shard file
+            if (verbose || shardCount > 1) {
+                log.log(stats.getFileStats(inFile, written, publisher.getSize(written), fileType,
+                        publisher.getServedBytes(written), !changed), verbose ? Project.MSG_INFO : Project.MSG_VERBOSE);
+            }
+        }
+
+        /**
+         * Lets the duplicates waiting for the output go on without it, unless it was completed.
+         */
+        void abort() {
+            if (!done && contentKey != null) {
+                deduplicator.complete(contentKey, null, timer.getNanos(Phase.COMPRESS));
+            }
+            done = true;
+        }
+    }
+
+    /**
+     * @param cacheKey
+     *            key to store the output under in the output cache, or null
+     */
+    private boolean compressStreaming(final ByteSource input, final File outFile, final String fileType,
+            final CompressionTimer timer, final FileCompressor compressor, final String cacheKey,
+            final LogBuffer log) throws IOException {
+        final File temp = publisher.createTempFile(outFile);
+        try {
+            timer.begin();
+            final Reader in = new BufferedReader(new InputStreamReader(input.openStream(), charset
+                    .newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                            CodingErrorAction.REPLACE)));
+            try {
+                final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), charset));
+                try {
+                    getEngine().compress(in, out, compressor, getCompressorOptions(fileType), log);
+                } finally {
+                    out.close();
                 }
-                return logMessage;
+            } finally {
+                in.close();
             }
+            timer.end(Phase.COMPRESS, input.size());
+            // read while compressing, so the time is all in the compress phase
+            timer.count(Phase.READ, input.size());
 
-            public EvaluatorException runtimeError(final String message, final String sourceName, final int line,
-                    final String lineSource, final int lineOffset) {
-                log(getMessage(sourceName, message, line, lineOffset), Project.MSG_ERR);
-                return new EvaluatorException(message);
+            if (cacheKey != null) {
+                outputCache.put(cacheKey, Files.asByteSource(temp), log);
             }
 
-            public void warning(final String message, final String sourceName, final int line, final String lineSource,
-                    final int lineOffset) {
-                log(getMessage(sourceName, message, line, lineOffset), Project.MSG_WARN);
+            timer.begin();
+            final boolean changed = publisher.publish(outFile, getArchiveMethod(fileType), temp);
+            timer.end(Phase.WRITE, publisher.getSize(publisher.resolve(outFile)));
+            return changed;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return a temporary file next to outFile holding the cached output, or null when it is not cached
+     */
+    private File copyFromCache(final String cacheKey, final File inFile, final File outFile,
+            final CompressionTimer timer, final LogBuffer log) throws IOException {
+        final File temp = publisher.createTempFile(outFile);
+        timer.begin();
+        final boolean found = outputCache.copy(cacheKey, temp, log);
+        // a hit stands in for reading and compressing the input; a miss reads it later
+        timer.end(Phase.READ, found ? inFile.length() : 0L);
+        if (!found) {
+            temp.delete();
+            stats.addCacheMiss();
+            return null;
+        }
+        stats.addCacheHit();
+        return temp;
+    }
+
+    /**
+     * @return the content of the input when it was read ahead, otherwise null
+     */
+    private byte[] takePrefetched(final File inFile) throws BuildException {
+        if (prefetcher == null) {
+            return null;
+        }
+        try {
+            return prefetcher.take(inFile);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while reading " + inFile, e);
+        }
+    }
+
+    private void acquireMemory(final long bytes, final File file) throws BuildException {
+        try {
+            memory.acquire(bytes);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while waiting for memory to compress " + file, e);
+        }
+    }
+
+    private Deduplicator.Original claimOriginal(final String contentKey, final String file) throws BuildException {
+        try {
+            return deduplicator.claim(contentKey);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while waiting for a duplicate of " + file, e);
+        }
+    }
+
+    private byte[] compress(final CharBuffer input, final String fileType, final LogBuffer log) throws IOException,
+            EvaluatorException {
+        return getEngine().compress(input, charset, fileType, getCompressorOptions(fileType), log);
+    }
+
+    private File getOutputBase() {
+        if (toArchive != null) {
+            return toArchive;
+        }
+        return toDir != null ? toDir : getProject().getBaseDir();
+    }
+
+    private void compressBundle(final Bundle bundle, final LogBuffer log) throws EvaluatorException,
+            BuildException {
+        final File outFile = bundle.getToFile();
+        final String fileType = bundle.getFileType();
+        final List<File> members = bundle.getFiles();
+        final String manifestPath = getManifestPath(bundle);
+
+        // do not rebuild when no member changed
+        String manifestKey = null;
+        try {
+            if (manifest != null) {
+                manifestKey = CompressionManifest.createKey(members, getOptionsKey(fileType) + ";enabled="
+                        + isEnabled());
+            }
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading bundle members of " + outFile, ioe);
+        }
+        if (publisher.hasOutput(outFile)) {
+            long newestMember = 0L;
+            for (final File member : members) {
+                newestMember = Math.max(newestMember, member.lastModified());
+            }
+            if (manifestKey != null ? manifest.isUpToDate(manifestPath, manifestKey)
+                    : publisher.getLastModified(publisher.resolve(outFile)) >= newestMember) {
+                return;
             }
-        });
-        return compressor;
+        }
+
+        long required = 0L;
+        for (final File member : members) {
+            required += member.length() * MEMORY_PER_INPUT_BYTE;
+        }
+        acquireMemory(required, outFile);
+        try {
+            final CompressionTimer timer = new CompressionTimer(manifestPath, fileType);
+
+            // members are separated by a line break, like a fixlastline concat
+            timer.begin();
+            final StringBuilder content = new StringBuilder();
+            long fromBytes = 0L;
+            for (final File member : members) {
+                content.append(decoders.get().decode(member, charset)).append('\n');
+                fromBytes += member.length();
+            }
+            timer.end(Phase.READ, fromBytes);
+
+            timer.begin();
+            final byte[] result;
+            if (isEnabled()) {
+                final char[] chars = new char[content.length()];
+                content.getChars(0, chars.length, chars, 0);
+                result = compress(CharBuffer.wrap(chars), fileType, log);
+            } else {
+                result = content.toString().getBytes(charset);
+            }
+            timer.end(Phase.COMPRESS, fromBytes);
+
+            timer.begin();
+            final boolean changed = publisher.write(outFile, getArchiveMethod(fileType), result);
+            final File written = publisher.resolve(outFile);
+            timer.end(Phase.WRITE, publisher.getSize(written));
+
+            if (report != null) {
+                report.add(timer);
+            }
+            if (manifestKey != null) {
+                manifest.update(manifestPath, manifestKey);
+            }
+
+            if (verbose || shardCount > 1) {
+                log.log(stats.getBundleStats(written, publisher.getSize(written), members.size(), fromBytes, fileType,
+                        publisher.getServedBytes(written), !changed), verbose ? Project.MSG_INFO : Project.MSG_VERBOSE);
+            }
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when compressing bundle " + outFile, ioe);
+        } finally {
+            memory.release(required);
+        }
+    }
+
+    /**
+     * @return the output recorded in the manifest key of a file, so that builds sharing a manifest but writing to
+     *         different places do not take each other's outputs for up to date
+     */
+    private String getManifestOutput(final File outFile) {
+        // relative to the project like the manifest paths of bundles, without the cost of canonical paths
+        try {
+            return getProject().getBaseDir().toPath().toAbsolutePath().normalize().relativize(outFile.toPath()
+                    .toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+        } catch (final IllegalArgumentException e) {
+            return outFile.getAbsolutePath();
+        }
+    }
+
+    private String getManifestPath(final Bundle bundle) {
+        // relative to the project, so that manifests stay valid when the workspace moves
+        try {
+            return "bundle:" + FileUtils.getRelativePath(getProject().getBaseDir(), bundle.getToFile());
+        } catch (final Exception e) {
+            return "bundle:" + bundle.getToFile().getAbsolutePath();
+        }
+    }
+
+    private void copyFile(final File srcFile, final File targetFile, final String fileType, final LogBuffer log)
+            throws BuildException {
+        // copies keep the timestamp of their source and links share it, so a newer source means a changed one,
+        // archive entries are never older than their source
+        if (srcFile.getAbsolutePath().equals(targetFile.getAbsolutePath())
+                || publisher.exists(targetFile) && publisher.getSize(targetFile) == srcFile.length()
+                && publisher.getLastModified(targetFile) >= srcFile.lastModified()) {
+            stats.addUpToDateCopy();
+            return;
+        }
+
+        try {
+            publisher.copy(srcFile, targetFile, getArchiveMethod(fileType));
+            stats.addCopied(srcFile.length());
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when copying " + srcFile, ioe);
+        }
+
+        log.log("Copied " + srcFile.getName() + " [" + srcFile.length() + "]", Project.MSG_VERBOSE);
     }
 
     @Override
     public void execute() {
         validateDirs();
+        validateShard();
+        final String[] files;
+        if (fromDir == null) {
+            files = new String[0];
+        } else if (fastScan && !fileset.hasSelectors()) {
+            scanTrees();
+            files = scannedInputs.getFiles();
+        } else {
+            files = getDirectoryScanner(fromDir).getIncludedFiles();
+        }
 
-        final DirectoryScanner ds = getDirectoryScanner(fromDir);
-        final String[] files = ds.getIncludedFiles();
+        try {
+            if (!executeInDaemon(files)) {
+                execute(files);
+            }
+        } finally {
+            scannedInputs = null;
+            scannedOutputs = null;
+        }
 
-        for (final String file : files) {
-            final File inFile = new File(fromDir.getAbsolutePath(), file);
-            final String fileType = FileType.getFileType(file);
-            if (fileType == null) {
-                continue;
+        if (watch) {
+            watch(files);
+        }
+    }
+
+    /**
+     * Processes the given files of fromDir and the nested bundles. Also used by {@link CompressionDaemon}.
+     */
+    void execute(final String[] files) {
+        execute(files, new String[0]);
+    }
+
+    /**
+     * Processes the given files of fromDir and the nested bundles, after removing the outputs of deleted files.
+     */
+    private void execute(final String[] files, final String[] deletedFiles) {
+        validateDirs();
+        loadManifest();
+        loadAssetManifest();
+        stats = new CompressionStatistics();
+        report = reportFile != null ? new CompressionReport(reportFile, reportSlowestFiles) : null;
+        // duplicates share one output file through links, which archive entries cannot
+        deduplicator = deduplicate && toArchive == null ? new Deduplicator() : null;
+        memory = new MemoryBudget(memoryBudget > 0 ? memoryBudget : Runtime.getRuntime().maxMemory() / 2);
+        outputCache = cacheDir != null && isEnabled() ? new OutputCache(cacheDir, cacheDirMaxSize) : null;
+        if (ioThreads > 0 && isEnabled()) {
+            prefetcher = new Prefetcher(ioThreads, readAhead);
+            // a full queue makes compression write the output itself, so pending outputs stay bounded
+            writers = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(ioThreads * WRITES_PER_IO_THREAD),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            prefetcher = null;
+            writers = null;
+        }
+        archive = toArchive != null ? openArchive() : null;
+        publisher = new OutputPublisher(getOutputBase(), archive, archivePrefix, assets, fingerprintLength, hardLinks,
+                gzip, deflate, gzipLevel, gzipMinSize);
+        final long memoryCacheHits = getEngine().getCacheHits();
+        final long memoryCacheMisses = getEngine().getCacheMisses();
+        inliner = inlineMaxSize > 0 && fromDir != null && isEnabled() ? new HtmlInliner(fromDir, charset,
+                inlineMaxSize, getEngine(), getCompressorOptions(FileType.JS_FILE), getCompressorOptions(
+                        FileType.CSS_FILE), jsSuffix, cssSuffix) : null;
+
+        for (final String file : deletedFiles) {
+            removeOutput(file);
+        }
+
+        final Set<String> shard = getShard(files);
+        // outputs are only collected for the shard file and the size budgets
+        final Set<String> shardOutputs = new TreeSet<String>();
+        final Map<File, String> outputTypes = new LinkedHashMap<File, String>();
+        final boolean checkBudgets = !budgets.isEmpty() || budgetBaseline != null;
+        final Set<String> upToDate = new HashSet<String>();
+
+        // compression runs on a bounded pool, results are still logged in file order
+        final JobRunner jobs = new JobRunner(this, getThreadCount());
+        final long start = System.nanoTime();
+        try {
+            // the files of this run are known up front, so that the I/O threads can read ahead of compression
+            final List<String> selected = new ArrayList<String>();
+            for (final String file : files) {
+                final String fileType = getFileType(file);
+                if (fileType == null || shard != null && !shard.contains(getShardKey(file))) {
+                    continue;
+                }
+                selected.add(file);
+
+                // outputs found up to date by the scan are not even submitted
+                final File inFile = new File(fromDir.getAbsolutePath(), file);
+                final boolean scanned = isScanned(fileType);
+                if (scanned && isScannedUpToDate(file, fileType)) {
+                    upToDate.add(file);
+                } else if (prefetcher != null && (manifest != null || scanned || !publisher.isNewer(getOutFile(
+                        file, fileType), inFile.lastModified()))) {
+                    prefetcher.add(inFile);
+                }
             }
+            scannedInputs = null;
+            scannedOutputs = null;
 
-            final File outFile = new File(toDir.getAbsolutePath(), file.replaceFirst(fileType + "$",
-                    newFileSuffix(fileType)));
-            if (isEnabled()) {
-                compressFile(inFile, outFile, fileType);
-            } else {
-                try {
-                    copyFile(inFile, outFile);
-                } catch (final IOException e) {
-                    e.printStackTrace();
+            for (final String file : selected) {
+                final File inFile = new File(fromDir.getAbsolutePath(), file);
+                final String fileType = getFileType(file);
+                final File outFile = getOutFile(file, fileType);
+                if (shard != null) {
+                    shardOutputs.add(publisher.getLogicalName(outFile));
+                }
+                if (checkBudgets) {
+                    outputTypes.put(outFile, fileType);
+                }
+                if (upToDate.contains(file)) {
+                    continue;
+                }
+                if (isEnabled()) {
+                    final LogBuffer log = new LogBuffer();
+                    jobs.submit(file, log, new Callable<Object>() {
+
+                        public Object call() {
+                            return compressFile(file, inFile, outFile, fileType, log);
+                        }
+                    });
+                } else {
+                    final LogBuffer log = new LogBuffer();
+                    jobs.submit(file, log, new Callable<Object>() {
+
+                        public Object call() {
+                            copyFile(inFile, outFile, fileType, log);
+                            return null;
+                        }
+                    });
+                }
+            }
+
+            for (final Bundle bundle : bundles) {
+                if (shard != null && !shard.contains(getShardKey(bundle))) {
+                    continue;
+                }
+                if (shard != null) {
+                    shardOutputs.add(publisher.getLogicalName(bundle.getToFile()));
+                }
+                if (checkBudgets) {
+                    outputTypes.put(bundle.getToFile(), bundle.getFileType());
+                }
+
+                final LogBuffer log = new LogBuffer();
+                jobs.submit(String.valueOf(bundle.getToFile()), log, new Callable<Object>() {
+
+                    public Object call() {
+                        compressBundle(bundle, log);
+                        return null;
+                    }
+                });
+            }
+
+            jobs.awaitAll();
+
+            if (fingerprint && removeStaleFingerprints) {
+                for (final File removed : publisher.removeStaleFingerprints()) {
+                    if (verbose) {
+                        log("Removed stale " + removed.getName());
+                    }
                 }
             }
+        } finally {
+            jobs.shutdown();
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
+            if (writers != null) {
+                writers.shutdownNow();
+            }
+            if (outputCache != null) {
+                stats.addCacheEvictions(outputCache.evict());
+            }
+            stats.setMemoryCache(getEngine().getCacheHits() - memoryCacheHits, getEngine().getCacheMisses()
+                    - memoryCacheMisses, getEngine().getCachedBytes(), getEngine().getCacheSize());
+            if (archive != null) {
+                closeArchive();
+            }
+            storeManifest();
+            storeAssetManifest();
+            storeReport();
+        }
+
+        if (shard != null) {
+            storeShardFile(shardOutputs, System.nanoTime() - start);
         }
 
         if (verbose) {
@@ -231,8 +931,382 @@ public class YuiCompressorTask extends MatchingTask {
             log(stats.getXhtmlStats());
             log(stats.getJsStats());
             log(stats.getCssStats());
+            for (final FileCompressor compressor : getCompressors().getAll()) {
+                if (!isDefaultFileType(compressor.getFileType())) {
+                    log(stats.getStats(compressor.getFileType(), compressor.getLabel()));
+                }
+            }
+            if (!isEnabled()) {
+                log(stats.getCopyStats(System.nanoTime() - start));
+            }
+            if (outputCache != null) {
+                log(stats.getCacheStats());
+            }
+            if (memoryCacheSize > 0) {
+                log(stats.getMemoryCacheStats());
+            }
+            if (deduplicator != null) {
+                log(stats.getDeduplicationStats());
+            }
             log(stats.getTotalStats());
         }
+
+        if (checkBudgets) {
+            checkBudgets(outputTypes);
+        }
+    }
+
+    /**
+     * Measures the outputs of this run, reports those over their budget or bigger than in the baseline, and fails
+     * the build for them when failOnBudget is set.
+     *
+     * @param outputTypes
+     *            file types of the outputs, which are not written yet when fingerprinting
+     */
+    private void checkBudgets(final Map<File, String> outputTypes) throws BuildException {
+        // a baseline yet to be written is empty
+        final boolean baselineExists = budgetBaseline != null && budgetBaseline.isFile();
+        final SizeBudgets sizes;
+        try {
+            sizes = new SizeBudgets(budgets, budgetBaseline == null ? null : baselineExists ? SizeBudgets
+                    .loadBaseline(budgetBaseline) : new Properties(), budgetTolerance);
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading budget baseline " + budgetBaseline, ioe);
+        }
+        try {
+            publisher.measure(outputTypes, sizes);
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when measuring outputs", ioe);
+        }
+
+        final List<String> violations = sizes.check();
+        if (violations.isEmpty()) {
+            if (verbose) {
+                log("[Budget] All " + sizes.getOutputCount() + " outputs within budget");
+            }
+        } else {
+            for (final String violation : violations) {
+                log("[Budget] " + violation, Project.MSG_WARN);
+            }
+        }
+
+        if (budgetBaseline != null && (!baselineExists || updateBudgetBaseline)) {
+            try {
+                sizes.storeBaseline(budgetBaseline);
+            } catch (final IOException ioe) {
+                throw new BuildException("I/O Error when writing budget baseline " + budgetBaseline, ioe);
+            }
+        }
+        if (failOnBudget && !violations.isEmpty()) {
+            throw new BuildException(violations.size() + " size budget violations, see the [Budget] report");
+        }
+    }
+
+    /**
+     * @return the work item keys of this shard, or null when the task is not sharded
+     */
+    private Set<String> getShard(final String[] files) throws BuildException {
+        if (shardCount == 1) {
+            return null;
+        }
+
+        final ShardPartition partition = new ShardPartition();
+        for (final String file : files) {
+            if (getFileType(file) != null) {
+                partition.add(getShardKey(file), new File(fromDir, file).length());
+            }
+        }
+        for (final Bundle bundle : bundles) {
+            long bytes = 0L;
+            for (final File member : bundle.getFiles()) {
+                bytes += member.length();
+            }
+            partition.add(getShardKey(bundle), bytes);
+        }
+        return partition.getShard(shardIndex, shardCount);
+    }
+
+    private static String getShardKey(final String file) {
+        return "file:" + file.replace(File.separatorChar, '/');
+    }
+
+    private String getShardKey(final Bundle bundle) {
+        return "bundle:" + publisher.getLogicalName(bundle.getToFile()).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Writes the statistics of this shard, and the asset manifest entries of its outputs, for
+     * {@link MergeShardsTask}.
+     */
+    private void storeShardFile(final Set<String> outputs, final long nanos) throws BuildException {
+        final Properties properties = new Properties();
+        properties.setProperty("shard.index", String.valueOf(shardIndex));
+        properties.setProperty("shard.count", String.valueOf(shardCount));
+        properties.setProperty("shard.nanos", String.valueOf(nanos));
+        stats.store(properties);
+        if (assets != null) {
+            for (final Map.Entry<String, String> entry : assets.getEntries().entrySet()) {
+                if (outputs.contains(entry.getKey())) {
+                    properties.setProperty("asset." + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        final File parent = shardFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, "yui-compressor shard " + shardIndex + " of " + shardCount);
+            OutputFiles.writeAtomically(shardFile, out.toByteArray());
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when writing shard file " + shardFile, ioe);
+        }
+    }
+
+    /**
+     * @return true when a daemon compressed the files, bundles and plain copies are always handled in-process
+     */
+    private boolean executeInDaemon(final String[] files) throws BuildException {
+        if (!daemon || !isEnabled() || !bundles.isEmpty() || !fileTypes.isEmpty() || !budgets.isEmpty()
+                || budgetBaseline != null || shardCount > 1 || files.length == 0) {
+            return false;
+        }
+
+        final File stateFile = daemonStateFile != null ? daemonStateFile : CompressionDaemonClient
+                .getDefaultStateFile();
+        if (new CompressionDaemonClient(this, stateFile, daemonIdleTimeout).execute(getProject().getBaseDir(),
+                CompressionDaemonClient.getAttributes(this), files)) {
+            return true;
+        }
+        log("Compression daemon not available, compressing in-process", Project.MSG_VERBOSE);
+        return false;
+    }
+
+    /**
+     * Recompresses changed files until the build is interrupted. Compression errors are logged, and watching
+     * continues.
+     */
+    private void watch(final String[] initialFiles) throws BuildException {
+        if (fromDir == null) {
+            throw new BuildException("watch requires a fromDir");
+        }
+
+        final DirectoryWatcher watcher;
+        try {
+            watcher = new DirectoryWatcher(fromDir);
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when watching " + fromDir, ioe);
+        }
+
+        final FileSelector selector = new FileSelector(fileset, getProject());
+        log("Watching " + fromDir + " for changes");
+        try {
+            // the patterns can only be matched on their own when there are no selectors
+            watcher.watch(initialFiles, watchDebounce, fileset.hasSelectors(), new DirectoryWatcher.Handler() {
+
+                public String[] scan() {
+                    return getDirectoryScanner(fromDir).getIncludedFiles();
+                }
+
+                public boolean isSelected(final String file) {
+                    return selector.apply(file);
+                }
+
+                public void apply(final String[] changedFiles, final String[] deletedFiles) {
+                    try {
+                        execute(changedFiles, deletedFiles);
+                    } catch (final BuildException e) {
+                        log(e.getMessage(), Project.MSG_ERR);
+                    }
+                }
+            });
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when watching " + fromDir, ioe);
+        } finally {
+            try {
+                watcher.close();
+            } catch (final IOException ioe) {
+                log("Cannot stop watching " + fromDir + ": " + ioe.getMessage(), Project.MSG_VERBOSE);
+            }
+        }
+    }
+
+    /**
+     * Walks fromDir and toDir at the same time, reading the attributes of every file once, and selects the files of
+     * fromDir while walking. Directories whose whole content is excluded are not walked.
+     */
+    private void scanTrees() throws BuildException {
+        final long start = System.nanoTime();
+        final FileSelector selector = new FileSelector(fileset, getProject());
+        final FileTreeSnapshot.Scanner scanner = new FileTreeSnapshot.Scanner(Math.max(getThreadCount(), 2));
+        try {
+            scannedInputs = scanner.scan(fromDir, selector.getExcludedDirectories(), selector);
+            // outputs next to their inputs are in the same tree, archive entries are read from the archive
+            if (toArchive != null) {
+                scannedOutputs = null;
+            } else if (toDir.getAbsoluteFile().equals(fromDir.getAbsoluteFile())) {
+                scannedOutputs = scannedInputs;
+            } else {
+                scannedOutputs = scanner.scan(toDir, null, null);
+            }
+            scanner.await();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when scanning " + fromDir, ioe);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("Interrupted while scanning " + fromDir, ie);
+        } finally {
+            scanner.close();
+        }
+        log("Scanned " + scannedInputs.size() + " inputs" + (scannedOutputs != null && scannedOutputs
+                != scannedInputs ? " and " + scannedOutputs.size() + " outputs" : "") + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms", Project.MSG_VERBOSE);
+    }
+
+    /**
+     * @return true when the scan alone decides whether outputs of the file type are up to date, content based
+     *         checks and pages with inlined files still read their inputs
+     */
+    private boolean isScanned(final String fileType) {
+        return scannedInputs != null && manifest == null && isEnabled() && !isInlining(fileType);
+    }
+
+    /**
+     * Same as {@link OutputPublisher#isNewer(File, long)}, with the attributes read by the scan. Outputs are looked up
+     * by their path relative to toDir.
+     */
+    private boolean isScannedUpToDate(final String file, final String fileType) {
+        final FileTreeSnapshot.Attributes input = scannedInputs.get(file);
+        final String outName = getOutName(file, fileType);
+        if (input == null || scannedOutputs == scannedInputs && outName.equals(file)) {
+            return false;
+        }
+        final long lastModified = input.getLastModified();
+        if (toArchive != null) {
+            return publisher.isNewer(getOutFile(file, fileType), lastModified);
+        }
+
+        String name = outName;
+        if (fingerprint) {
+            final File target = publisher.resolve(getOutFile(file, fileType));
+            if (target == null) {
+                return false;
+            }
+            name = publisher.getLogicalName(target).replace('/', File.separatorChar);
+        }
+        return publisher.isNewer(scannedOutputs, name, lastModified);
+    }
+
+    /**
+     * Deletes the output of a deleted input file, with its sidecars and manifest entries.
+     */
+    private void removeOutput(final String file) {
+        final String fileType = getFileType(file);
+        if (fileType == null) {
+            return;
+        }
+
+        final File outFile = getOutFile(file, fileType);
+        final File target = publisher.resolve(outFile);
+        if (target != null && !target.getAbsolutePath().equals(new File(fromDir, file).getAbsolutePath())) {
+            publisher.remove(target);
+            if (verbose) {
+                log("Removed " + target.getName());
+            }
+        }
+        if (manifest != null) {
+            manifest.remove(file);
+        }
+        if (assets != null) {
+            assets.remove(publisher.getLogicalName(outFile));
+        }
+    }
+
+    private File getOutFile(final String file, final String fileType) {
+        final File base = toArchive != null ? toArchive : toDir;
+        return new File(base.getAbsolutePath(), getOutName(file, fileType));
+    }
+
+    /**
+     * @return the path of the output of the file relative to toDir, or toArchive
+     */
+    private String getOutName(final String file, final String fileType) {
+        return file.endsWith(fileType) ? file.substring(0, file.length() - fileType.length()) + newFileSuffix(
+                fileType) : file;
+    }
+
+    private String getOptionsKey(final String fileType) {
+        return getCompressionKey(fileType) + ";gzip=" + gzip + ";deflate=" + deflate + ";gzipLevel=" + gzipLevel
+                + ";gzipMinSize=" + gzipMinSize + ";fingerprint=" + fingerprint + ";fingerprintLength="
+                + fingerprintLength;
+    }
+
+    /**
+     * @return everything but the input that the compressed content of a file depends on
+     */
+    private String getCompressionKey(final String fileType) {
+        return fileType + ";charset=" + charset.name() + ";yuicompressor=" + getVersion(JavaScriptCompressor.class)
+                + ";htmlcompressor=" + getVersion(HtmlCompressor.class) + ";task=" + getVersion(
+                        YuiCompressorTask.class) + ";options=" + getCompressorOptions(fileType)
+                + ";compressor=" + getCompressors().get(fileType).getClass().getName() + "@" + getVersion(
+                        getCompressors().get(fileType).getClass()) + (isHtml(fileType) ? ";inlineMaxSize="
+                                + inlineMaxSize + ";inlined=" + getCompressorOptions(FileType.JS_FILE)
+                                + getCompressorOptions(FileType.CSS_FILE) : "");
+    }
+
+    private String getCacheKey(final HashCode contentHash, final String fileType) {
+        return Hashing.sha256().hashString(contentHash + ";" + getCompressionKey(fileType), Charsets.UTF_8)
+                .toString();
+    }
+
+    private static String getVersion(final Class<?> type) {
+        final Package pkg = type.getPackage();
+        if (pkg != null && pkg.getImplementationVersion() != null) {
+            return pkg.getImplementationVersion();
+        }
+        // fall back to the jar name, which usually carries the version, and is the same in every workspace
+        final CodeSource source = type.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null) {
+            return "unknown";
+        }
+        final String location = source.getLocation().getPath();
+        return location.substring(location.lastIndexOf('/', location.length() - 2) + 1);
+    }
+
+    /**
+     * @return true for the file types that always have their own line in the statistics
+     */
+    static boolean isDefaultFileType(final String fileType) {
+        return fileType.equals(FileType.XML_FILE) || fileType.equals(FileType.HTML_FILE)
+                || fileType.equals(FileType.XHTML_FILE) || fileType.equals(FileType.JS_FILE)
+                || fileType.equals(FileType.CSS_FILE);
+    }
+
+    private int getThreadCount() {
+        // anything below one means one worker per available processor
+        return threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    public FileTypeOptions createFileType() {
+        final FileTypeOptions options = new FileTypeOptions();
+        fileTypes.add(options);
+        return options;
+    }
+
+    public Budget createBudget() {
+        final Budget budget = new Budget();
+        budgets.add(budget);
+        return budget;
+    }
+
+    public Bundle createBundle() {
+        final Bundle bundle = new Bundle();
+        bundles.add(bundle);
+        return bundle;
     }
 
     public boolean isEnabled() {
@@ -240,6 +1314,11 @@ public class YuiCompressorTask extends MatchingTask {
     }
 
     private String newFileSuffix(final String fileType) {
+        final FileTypeOptions options = getFileTypeOptions(fileType);
+        if (options != null && options.getSuffix() != null) {
+            return options.getSuffix();
+        }
+
         if (fileType.equals(FileType.JS_FILE)) {
             return jsSuffix;
         } else if (fileType.equals(FileType.CSS_FILE)) {
@@ -251,19 +1330,209 @@ public class YuiCompressorTask extends MatchingTask {
         } else if (fileType.equals(FileType.XHTML_FILE)) {
             return xhtmlSuffix;
         }
+        return fileType;
+    }
+
+    /**
+     * @return the file type of a file of fromDir, or null when no enabled compressor handles it
+     */
+    private String getFileType(final String file) {
+        final String fileType = getCompressors().getFileType(file);
+        if (fileType == null) {
+            return null;
+        }
+        final FileTypeOptions options = getFileTypeOptions(fileType);
+        return options == null || options.isEnabled() ? fileType : null;
+    }
+
+    /**
+     * @return the method of the archive entries of the file type, the filetype element overriding archiveMethod
+     */
+    private int getArchiveMethod(final String fileType) throws BuildException {
+        final FileTypeOptions options = getFileTypeOptions(fileType);
+        return options != null && options.getArchiveMethod() != null ? parseArchiveMethod(options
+                .getArchiveMethod()) : archiveMethod;
+    }
+
+    private static int parseArchiveMethod(final String method) throws BuildException {
+        if ("deflated".equalsIgnoreCase(method)) {
+            return ZipEntry.DEFLATED;
+        }
+        if ("stored".equalsIgnoreCase(method)) {
+            return ZipEntry.STORED;
+        }
+        throw new BuildException("Unknown archive method " + method + ", use deflated or stored");
+    }
+
+    private FileTypeOptions getFileTypeOptions(final String fileType) {
+        for (final FileTypeOptions options : fileTypes) {
+            if (options.getExtension().equals(fileType)) {
+                return options;
+            }
+        }
         return null;
     }
 
-    private Reader openFile(final File file) throws BuildException {
-        Reader in;
+    private CompressionEngine getEngine() throws BuildException {
+        if (engine == null) {
+            try {
+                // scripts and styles shared by many pages are only compressed once
+                engine = memoryCacheSize > 0 ? getSharedEngine(memoryCacheSize) : new CompressionEngine(
+                        YuiCompressorTask.class.getClassLoader(), inlineMaxSize > 0 || compressInline
+                                ? EMBEDDED_CACHE_SIZE : 0L);
+            } catch (final IllegalArgumentException e) {
+                throw new BuildException(e.getMessage(), e);
+            }
+            for (final FileTypeOptions options : fileTypes) {
+                if (engine.getCompressors().get(options.getExtension()) == null) {
+                    throw new BuildException("No compressor for filetype " + options.getExtension());
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * @return the engine shared by the invocations of the task, its cache grown to the given size when needed
+     */
+    private static synchronized CompressionEngine getSharedEngine(final long cacheSize) {
+        if (sharedEngine == null) {
+            sharedEngine = new CompressionEngine(YuiCompressorTask.class.getClassLoader(), cacheSize);
+        } else {
+            sharedEngine.ensureCacheSize(cacheSize);
+        }
+        return sharedEngine;
+    }
+
+    private FileCompressors getCompressors() throws BuildException {
+        return getEngine().getCompressors();
+    }
+
+    /**
+     * @return the compressor attributes of the task, overridden by those of the filetype element
+     */
+    private Map<String, String> getCompressorOptions(final String fileType) {
+        final Map<String, String> options = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        options.put("lineBreakPosition", String.valueOf(lineBreakPosition));
+        options.put("munge", String.valueOf(munge));
+        options.put("warn", String.valueOf(warn));
+        options.put("preserveAllSemiColons", String.valueOf(preserveAllSemiColons));
+        options.put("optimize", String.valueOf(optimize));
+        options.put("level", level.name().toLowerCase(Locale.ROOT));
+        if (isHtml(fileType)) {
+            options.put("compressInline", String.valueOf(compressInline));
+        }
+
+        final FileTypeOptions typeOptions = getFileTypeOptions(fileType);
+        if (typeOptions != null) {
+            options.putAll(typeOptions.getOptions());
+        }
+        if (isHtml(fileType) && compressInline) {
+            // inline scripts and styles are compressed with the options of their own file type
+            putEmbeddedOptions(options, FileType.JS_FILE);
+            putEmbeddedOptions(options, FileType.CSS_FILE);
+        }
+        return options;
+    }
+
+    private void putEmbeddedOptions(final Map<String, String> options, final String embeddedType) {
+        for (final Map.Entry<String, String> option : getCompressorOptions(embeddedType).entrySet()) {
+            options.put(embeddedType + CompressionContext.EMBEDDED_SEPARATOR + option.getKey(), option.getValue());
+        }
+    }
+
+    private void loadAssetManifest() throws BuildException {
+        if (!fingerprint) {
+            assets = null;
+            return;
+        }
+        if (assetManifest == null) {
+            throw new BuildException("fingerprint requires an assetManifest file");
+        }
+        if (fingerprintLength < 1 || fingerprintLength > 64) {
+            throw new BuildException("fingerprintLength must be between 1 and 64");
+        }
+
+        assets = new AssetManifest(assetManifest);
         try {
-            in = new InputStreamReader(new FileInputStream(file), charset);
-        } catch (final UnsupportedCharsetException uche) {
-            throw new BuildException("Unsupported charset name: " + charset, uche);
+            assets.load();
         } catch (final IOException ioe) {
-            throw new BuildException("I/O Error when reading input file", ioe);
+            throw new BuildException("I/O Error when reading asset manifest " + assetManifest, ioe);
+        }
+        // pages fingerprinted by earlier versions are written under their own name now
+        for (final String logicalName : assets.getEntries().keySet()) {
+            if (OutputPublisher.isPage(logicalName)) {
+                assets.remove(logicalName);
+            }
         }
-        return in;
+    }
+
+    private void loadManifest() throws BuildException {
+        if (cacheFile == null) {
+            manifest = null;
+            return;
+        }
+
+        manifest = new CompressionManifest(cacheFile);
+        try {
+            manifest.load();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading cache file " + cacheFile, ioe);
+        }
+    }
+
+    /**
+     * @param archiveMethod
+     *            deflated or stored, for the entries written to toArchive [default is deflated]
+     */
+    public void setArchiveMethod(final String archiveMethod) {
+        this.archiveMethod = parseArchiveMethod(archiveMethod);
+    }
+
+    /**
+     * @param archivePrefix
+     *            directory of the archive to write the entries to, like static/ [default is the archive root]
+     */
+    public void setArchivePrefix(final String archivePrefix) {
+        final String prefix = archivePrefix.replace('\\', '/').replaceFirst("^/+", "");
+        this.archivePrefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    public void setAssetManifest(final File assetManifest) {
+        this.assetManifest = assetManifest;
+    }
+
+    /**
+     * @param budgetBaseline
+     *            properties file with the output sizes of an earlier run, outputs and file types that grew since are
+     *            reported, written when it does not exist yet
+     */
+    public void setBudgetBaseline(final File budgetBaseline) {
+        this.budgetBaseline = budgetBaseline;
+    }
+
+    /**
+     * @param budgetTolerance
+     *            growth over the baseline in percent that is not reported yet [default is 0]
+     */
+    public void setBudgetTolerance(final int budgetTolerance) {
+        this.budgetTolerance = budgetTolerance;
+    }
+
+    public void setCacheDir(final File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param cacheDirMaxSize
+     *            size like 512m the cache directory is trimmed to after each run [default is 1g]
+     */
+    public void setCacheDirMaxSize(final String cacheDirMaxSize) {
+        this.cacheDirMaxSize = MemoryBudget.parseSize(cacheDirMaxSize);
+    }
+
+    public void setCacheFile(final File cacheFile) {
+        this.cacheFile = cacheFile;
     }
 
     public void setCharset(final String charset) {
@@ -282,26 +1551,161 @@ public class YuiCompressorTask extends MatchingTask {
         }
     }
 
+    /**
+     * @param compressInline
+     *            compress the inline scripts and styles of HTML pages with the JavaScript and CSS compressors
+     *            [default is false]
+     */
+    public void setCompressInline(final boolean compressInline) {
+        this.compressInline = compressInline;
+    }
+
     public void setCssSuffix(final String cssSuffix) {
         this.cssSuffix = cssSuffix;
     }
 
+    public void setDaemon(final boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    public void setDaemonIdleTimeout(final int daemonIdleTimeout) {
+        this.daemonIdleTimeout = daemonIdleTimeout;
+    }
+
+    public void setDaemonStateFile(final File daemonStateFile) {
+        this.daemonStateFile = daemonStateFile;
+    }
+
+    /**
+     * @param deduplicate
+     *            compress identical inputs once and copy the output to the others, hard linking it instead with
+     *            hardLinks="true" [default is true]
+     */
+    public void setDeduplicate(final boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public void setDeflate(final boolean deflate) {
+        this.deflate = deflate;
+    }
+
     public void setEnabled(final boolean enabled) {
         this.enabled = enabled;
     }
 
+    /**
+     * @param failOnBudget
+     *            true to fail the build when an output is over its budget or grew since the baseline [default is
+     *            false]
+     */
+    public void setFailOnBudget(final boolean failOnBudget) {
+        this.failOnBudget = failOnBudget;
+    }
+
+    /**
+     * @param fastScan
+     *            walk fromDir and toDir in parallel, reading the attributes of every file once, and skip the files
+     *            whose outputs are up to date before compression starts; ignored with nested selectors
+     *            [default is false]
+     */
+    public void setFastScan(final boolean fastScan) {
+        this.fastScan = fastScan;
+    }
+
+    /**
+     * @param fingerprint
+     *            write outputs under a name containing a hash of their content, recorded in the assetManifest, except
+     *            HTML and XHTML pages, which are requested by their own name; toDir has to be outside fromDir
+     *            [default is false]
+     */
+    public void setFingerprint(final boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public void setFingerprintLength(final int fingerprintLength) {
+        this.fingerprintLength = fingerprintLength;
+    }
+
     public void setFromDir(final File fromDir) {
         this.fromDir = fromDir;
     }
 
+    public void setGzip(final boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public void setGzipLevel(final int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    public void setGzipMinSize(final long gzipMinSize) {
+        this.gzipMinSize = gzipMinSize;
+    }
+
+    /**
+     * @param hardLinks
+     *            hard link the files copied when the task is disabled and the outputs of identical inputs instead of
+     *            copying them, where the file system supports it [default is false]
+     */
+    public void setHardLinks(final boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    /**
+     * @param inlineMaxSize
+     *            inline local scripts and style sheets into HTML pages up to this compressed size, like 4k
+     *            [default is 0, no inlining]
+     */
+    public void setInlineMaxSize(final String inlineMaxSize) {
+        this.inlineMaxSize = MemoryBudget.parseSize(inlineMaxSize);
+    }
+
+    /**
+     * @param ioThreads
+     *            threads reading inputs ahead of compression and writing outputs behind it [default is 0, compression
+     *            threads do their own I/O]
+     */
+    public void setIoThreads(final int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
     public void setJsSuffix(final String jsSuffix) {
         this.jsSuffix = jsSuffix;
     }
 
+    /**
+     * @param level
+     *            fast, standard or max [default is standard]
+     */
+    public void setLevel(final String level) {
+        try {
+            this.level = CompressionLevel.parse(level);
+        } catch (final IllegalArgumentException e) {
+            throw new BuildException(e.getMessage());
+        }
+    }
+
     public void setLineBreakPosition(final int lineBreakPosition) {
         this.lineBreakPosition = lineBreakPosition;
     }
 
+    /**
+     * @param memoryBudget
+     *            heap to use for the files compressed at the same time, like 512m [default is half the maximum heap]
+     */
+    public void setMemoryBudget(final String memoryBudget) {
+        this.memoryBudget = MemoryBudget.parseSize(memoryBudget);
+    }
+
+    /**
+     * @param memoryCacheSize
+     *            memory for compressed results shared by all invocations of the task loaded by the same class loader,
+     *            like 64m, so that later invocations in the same build reuse them [default is 0, no shared cache]
+     */
+    public void setMemoryCacheSize(final String memoryCacheSize) {
+        this.memoryCacheSize = MemoryBudget.parseSize(memoryCacheSize);
+    }
+
     public void setMunge(final boolean munge) {
         this.munge = munge;
     }
@@ -314,10 +1718,62 @@ public class YuiCompressorTask extends MatchingTask {
         this.preserveAllSemiColons = preserveAllSemiColons;
     }
 
+    /**
+     * @param readAhead
+     *            input read ahead of compression by the I/O threads, like 64m [default is 16m]
+     */
+    public void setReadAhead(final String readAhead) {
+        this.readAhead = MemoryBudget.parseSize(readAhead);
+    }
+
+    public void setRemoveStaleFingerprints(final boolean removeStaleFingerprints) {
+        this.removeStaleFingerprints = removeStaleFingerprints;
+    }
+
+    public void setReportFile(final File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public void setReportSlowestFiles(final int reportSlowestFiles) {
+        this.reportSlowestFiles = reportSlowestFiles;
+    }
+
+    public void setShardCount(final int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public void setShardFile(final File shardFile) {
+        this.shardFile = shardFile;
+    }
+
+    public void setShardIndex(final int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param toArchive
+     *            ZIP, WAR or JAR archive to write the outputs to instead of toDir, updated when it exists
+     */
+    public void setToArchive(final File toArchive) {
+        this.toArchive = toArchive;
+    }
+
     public void setToDir(final File toDir) {
         this.toDir = toDir;
     }
 
+    /**
+     * @param updateBudgetBaseline
+     *            true to replace budgetBaseline with the sizes of this run [default is false]
+     */
+    public void setUpdateBudgetBaseline(final boolean updateBudgetBaseline) {
+        this.updateBudgetBaseline = updateBudgetBaseline;
+    }
+
     public void setVerbose(final boolean verbose) {
         this.verbose = verbose;
     }
@@ -326,12 +1782,117 @@ public class YuiCompressorTask extends MatchingTask {
         this.warn = warn;
     }
 
+    public void setWatch(final boolean watch) {
+        this.watch = watch;
+    }
+
+    public void setWatchDebounce(final long watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    private void storeReport() throws BuildException {
+        if (report == null) {
+            return;
+        }
+        try {
+            report.store();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when writing report " + reportFile, ioe);
+        }
+    }
+
+    private void storeAssetManifest() throws BuildException {
+        // shards leave the asset manifest to the merge of their shard files
+        if (assets == null || shardCount > 1) {
+            return;
+        }
+
+        try {
+            assets.store();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when writing asset manifest " + assetManifest, ioe);
+        }
+    }
+
+    private ArchiveOutput openArchive() throws BuildException {
+        try {
+            return new ArchiveOutput(toArchive);
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when reading archive " + toArchive, ioe);
+        }
+    }
+
+    /**
+     * Completes the archive, so that the entries written are there before the manifest says they are.
+     */
+    private void closeArchive() throws BuildException {
+        try {
+            if (archive.close() && verbose) {
+                log("Updated " + toArchive);
+            }
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when writing archive " + toArchive, ioe);
+        }
+    }
+
+    private void storeManifest() throws BuildException {
+        if (manifest == null) {
+            return;
+        }
+
+        try {
+            manifest.store();
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when writing cache file " + cacheFile, ioe);
+        }
+    }
+
+    private void validateShard() throws BuildException {
+        if (shardCount < 1) {
+            throw new BuildException("shardCount must be at least 1");
+        }
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new BuildException("shardIndex must be between 0 and " + (shardCount - 1));
+        }
+        if (shardCount > 1 && shardFile == null) {
+            throw new BuildException("shardCount requires a shardFile");
+        }
+        if (shardCount > 1 && watch) {
+            throw new BuildException("watch cannot be combined with shardCount");
+        }
+    }
+
     private void validateDirs() throws BuildException {
-        if (!fromDir.isDirectory()) {
+        if (fromDir == null && toDir == null && toArchive == null && !bundles.isEmpty()) {
+            // only bundles to build
+            return;
+        }
+        if (fromDir == null || !fromDir.isDirectory()) {
             throw new BuildException(fromDir + " is not a valid directory");
         }
-        if (!toDir.isDirectory()) {
+        if (toArchive != null) {
+            if (toDir != null) {
+                throw new BuildException("toDir and toArchive cannot be used together");
+            }
+            if (toArchive.isDirectory()) {
+                throw new BuildException(toArchive + " is not a valid archive");
+            }
+            return;
+        }
+        if (toDir == null || !toDir.isDirectory()) {
             throw new BuildException(toDir + " is not a valid directory");
         }
+        // fingerprinted outputs inside fromDir would be taken for inputs and fingerprinted again by the next build
+        if (fingerprint && isInside(toDir, fromDir)) {
+            throw new BuildException("fingerprint requires a toDir outside fromDir " + fromDir);
+        }
+    }
+
+    private static boolean isInside(final File dir, final File parent) throws BuildException {
+        try {
+            return dir.getCanonicalFile().toPath().startsWith(parent.getCanonicalFile().toPath());
+        } catch (final IOException ioe) {
+            throw new BuildException("I/O Error when resolving " + dir, ioe);
+        }
     }
 }
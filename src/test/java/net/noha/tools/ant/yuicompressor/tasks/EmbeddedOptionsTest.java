@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.ant.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class EmbeddedOptionsTest {
+
+    private static final String PAGE = "<html><body><script>function f(){var counter=1;return counter+1}</script>"
+            + "</body></html>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void inlineScriptUsesJavaScriptOptions() throws IOException {
+        final YuiCompressorTask task = newTask();
+        final FileTypeOptions js = task.createFileType();
+        js.setExtension(".js");
+        js.setDynamicAttribute("munge", "true");
+
+        final String output = compress(task);
+        assertFalse(output, output.contains("counter"));
+    }
+
+    @Test
+    public void inlineScriptKeepsNamesByDefault() throws IOException {
+        final String output = compress(newTask());
+        assertTrue(output, output.contains("counter"));
+    }
+
+    @Test
+    public void embeddedOptionsOverridePageOptions() {
+        final Map<String, String> options = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        options.put("munge", "false");
+        options.put(".js:munge", "true");
+        final CompressionContext context = new CompressionContext(new CompressionEngine(), options, null);
+
+        assertEquals("true", context.getEmbeddedOptions(FileType.JS_FILE).get("munge"));
+        assertEquals(options, context.getEmbeddedOptions(FileType.CSS_FILE));
+    }
+
+    private YuiCompressorTask newTask() throws IOException {
+        final Project project = new Project();
+        project.init();
+        final YuiCompressorTask task = new YuiCompressorTask();
+        task.setProject(project);
+        task.setFromDir(folder.newFolder("from"));
+        task.setToDir(folder.newFolder("to"));
+        task.setCompressInline(true);
+        return task;
+    }
+
+    private String compress(final YuiCompressorTask task) throws IOException {
+        Files.write(PAGE, new File(folder.getRoot(), "from/page.html"), Charsets.UTF_8);
+        task.execute();
+        return Files.toString(new File(folder.getRoot(), "to/page.html"), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FastJavaScriptMinifierTest {
+
+    @Test
+    public void divisionAfterParenthesis() {
+        assertEquals("a=(b)/2/c;", FastJavaScriptMinifier.minify("a = (b) / 2 / c;"));
+    }
+
+    @Test
+    public void divisionAfterBracket() {
+        assertEquals("a=b[0]/2/c;", FastJavaScriptMinifier.minify("a = b[0] / 2 / c;"));
+    }
+
+    @Test
+    public void divisionAfterBrace() {
+        assertEquals("x={}/2;", FastJavaScriptMinifier.minify("x = {} / 2;"));
+    }
+
+    @Test
+    public void divisionAfterBraceBeforeString() {
+        assertEquals("a=b}/2+\"a/b  c\";var q=\"http://x  y\";", FastJavaScriptMinifier.minify(
+                "a = b } / 2 + \"a/b  c\"; var q = \"http://x  y\";"));
+    }
+
+    @Test
+    public void divisionAfterBraceBeforeComment() {
+        assertEquals("x={}/2\ny()", FastJavaScriptMinifier.minify("x = {} / 2 // half\ny()"));
+    }
+
+    @Test
+    public void regexAfterBrace() {
+        assertEquals("if(x){y()}\n/ +/.test(s)", FastJavaScriptMinifier.minify("if (x) { y() }\n/ +/.test(s)"));
+    }
+
+    @Test
+    public void regexAfterReturn() {
+        assertEquals("function f(s){return/ +/.test(s)}", FastJavaScriptMinifier.minify(
+                "function f(s) {\n    return / +/.test(s)\n}"));
+    }
+
+    @Test
+    public void regexAfterParenthesis() {
+        assertEquals("f(/ a /g)", FastJavaScriptMinifier.minify("f( / a /g )"));
+    }
+
+    @Test
+    public void regexAfterComma() {
+        assertEquals("f(a,/ b[/]/)", FastJavaScriptMinifier.minify("f(a, / b[/]/)"));
+    }
+
+    @Test
+    public void regexAfterAssignment() {
+        assertEquals("var r=/ c\\/ d/;", FastJavaScriptMinifier.minify("var r = / c\\/ d/;"));
+    }
+
+    @Test
+    public void stringsWithSlashes() {
+        assertEquals("var s=\"a // b\",t='c /* d */ e',u=`f / g`;", FastJavaScriptMinifier.minify(
+                "var s = \"a // b\", t = 'c /* d */ e', u = `f / g`;"));
+    }
+
+    @Test
+    public void commentsWithSlashes() {
+        assertEquals("a=1;b=2;c=3;", FastJavaScriptMinifier.minify("a = 1; // x / y\nb = 2; /* p / q */ c = 3;"));
+    }
+
+    @Test
+    public void licenseCommentsAreKept() {
+        assertEquals("/*! (c) a/b */\nvar a=1;", FastJavaScriptMinifier.minify("/*! (c) a/b */\nvar a = 1;"));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.noha.tools.ant.yuicompressor.tasks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.junit.Test;
+
+public class FileSelectorTest {
+
+    @Test
+    public void selectsIncludedFiles() {
+        final FileSelector selector = newSelector("**/*.js", "lib/");
+        assertTrue(selector.apply(path("a.js")));
+        assertTrue(selector.apply(path("sub/b.js")));
+        assertFalse(selector.apply(path("a.css")));
+        assertFalse(selector.apply(path("lib/c.js")));
+    }
+
+    @Test
+    public void selectsAllFilesWithoutIncludes() {
+        final FileSelector selector = newSelector(null, null);
+        assertTrue(selector.apply(path("sub/a.css")));
+        // default excludes
+        assertFalse(selector.apply(path(".git/config")));
+    }
+
+    @Test
+    public void skipsDirectoriesWhoseContentIsExcluded() {
+        final FileSelector selector = newSelector(null, "lib/**");
+        assertTrue(selector.getExcludedDirectories().apply("lib"));
+        assertFalse(selector.getExcludedDirectories().apply("src"));
+        assertTrue(selector.getExcludedDirectories().apply(".git"));
+    }
+
+    private static FileSelector newSelector(final String includes, final String excludes) {
+        final Project project = new Project();
+        final FileSet fileset = new FileSet();
+        fileset.setProject(project);
+        fileset.setIncludes(includes);
+        fileset.setExcludes(excludes);
+        return new FileSelector(fileset, project);
+    }
+
+    private static String path(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+}
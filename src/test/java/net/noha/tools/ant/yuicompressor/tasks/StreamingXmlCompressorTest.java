@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2007, Yahoo! Inc. All rights reserved.
+ * Copyright (c) 2007, Viktor Lieskovsky
+ *
+ * The YUI Compressor was written and is maintained by:
+ *     	Julien Lecomte <jlecomte@yahoo-inc.com>
+ * The Ant task was written by:
+ *      Viktor Lieskovsky <viktor.lieskovsky@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *     * Neither the name of the <ORGANIZATION> nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.noha.tools.ant.yuicompressor.tasks;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class StreamingXmlCompressorTest {
+
+    private final CompressionEngine engine = new CompressionEngine();
+
+    @Test
+    public void removesCommentsAndWhitespaceBetweenTags() throws IOException {
+        assertEquals("<a><b x=\"1\"/></a>", xml("  <a>\n  <!-- note -->\n  <b  x = \"1\"  />\n</a>\n"));
+    }
+
+    @Test
+    public void keepsAttributeValues() throws IOException {
+        assertEquals("<a x=\"1  2\" y='&gt; 3'/>", xml("<a x=\"1  2\"\n   y='&gt; 3' />"));
+    }
+
+    @Test
+    public void keepsProcessingInstructions() throws IOException {
+        assertEquals("<?xml version=\"1.0\"?><?php if (a > b) echo \"don't\";?><a/>",
+                xml("<?xml version=\"1.0\"?>\n<?php if (a > b) echo \"don't\"; ?>\n<a/>"));
+    }
+
+    @Test
+    public void keepsCdata() throws IOException {
+        // like XmlCompressor, whitespace next to a CDATA section is text
+        assertEquals("<a>\n  <![CDATA[ x < y  <!-- not a comment --> ]]>\n</a>",
+                xml("<a>\n  <![CDATA[ x < y  <!-- not a comment --> ]]>\n</a>"));
+    }
+
+    @Test
+    public void keepsDoctypeInternalSubset() throws IOException {
+        assertEquals("<!DOCTYPE a [ <!ENTITY b \"c > d\"> <!ELEMENT a (#PCDATA)> <!-- a > b --> ]><a>&b;</a>",
+                xml("<!DOCTYPE a [\n  <!ENTITY b \"c > d\">\n  <!ELEMENT a (#PCDATA)>\n  <!-- a > b -->\n]>\n"
+                        + "<a>&b;</a>"));
+    }
+
+    @Test
+    public void keepsDoctypeWithoutSubset() throws IOException {
+        assertEquals("<!DOCTYPE a SYSTEM \"a.dtd\"><a/>", xml("<!DOCTYPE a  SYSTEM \"a.dtd\" >\n<a/>"));
+    }
+
+    @Test
+    public void keepsWhitespaceInsideTextElements() throws IOException {
+        assertEquals("<svg><text> <tspan>a</tspan> <tspan>b</tspan> </text><g/></svg>",
+                svg("<svg>\n  <text> <tspan>a</tspan> <tspan>b</tspan> </text>\n  <g/>\n</svg>"));
+    }
+
+    @Test
+    public void removesMetadata() throws IOException {
+        assertEquals("<svg><g/></svg>", svg("<svg>\n  <metadata><rdf:RDF/></metadata>\n  <g/>\n</svg>"));
+    }
+
+    private String xml(final String input) throws IOException {
+        return engine.compress(input, FileType.XML_FILE, Collections.<String, String> emptyMap());
+    }
+
+    private String svg(final String input) throws IOException {
+        return engine.compress(input, FileType.SVG_FILE, Collections.<String, String> emptyMap());
+    }
+}